@@ -0,0 +1,54 @@
+/**
+ * Scores a document with Okapi BM25. Words found in fewer documents get a
+ * higher weight, repeated matches of a word add less and less to the score,
+ * and longer documents than average need more matches for the same score.
+ *
+ * @author tiffanyz
+ */
+public class BM25Scorer implements Scorer {
+	/** How quickly repeated matches of a word stop adding to the score */
+	private final double k1;
+	/** How much the score depends on the length of the document, from 0 to 1 */
+	private final double b;
+
+	/**
+	 * Initializes the instance data with the usual parameters
+	 */
+	public BM25Scorer() {
+		this(1.2, 0.75);
+	}
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param k1 how quickly repeated matches of a word stop adding to the score
+	 * @param b how much the score depends on the length of the document
+	 */
+	public BM25Scorer(double k1, double b) {
+		if (k1 < 0 || b < 0 || b > 1) {
+			throw new IllegalArgumentException("Invalid BM25 parameters: k1=" + k1 + ", b=" + b);
+		}
+		this.k1 = k1;
+		this.b = b;
+	}
+
+	/**
+	 * Returns the inverse document frequency of the word, which is never
+	 * negative even for words found in most documents.
+	 */
+	@Override
+	public double weight(int documentFrequency, int numDocuments) {
+		return Math.log(1 + (numDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+	}
+
+	@Override
+	public double score(int frequency, double weight, int length, double averageLength) {
+		double norm = averageLength > 0 ? 1 - b + b * length / averageLength : 1;
+		return weight * frequency * (k1 + 1) / (frequency + k1 * norm);
+	}
+
+	@Override
+	public String toString() {
+		return "bm25";
+	}
+}
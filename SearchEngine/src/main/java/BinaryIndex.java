@@ -0,0 +1,255 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes an inverted index to a compact binary file, and opens such a file by
+ * memory-mapping it. The file has a header followed by the document table and
+ * the term dictionary with its postings:
+ *
+ * <pre>
+ * header:    magic, version
+ * documents: count, then (location, word count) for each document
+ * terms:     count, then for each term in sorted order:
+ *              term, number of documents,
+ *              then (document, number of positions, byte length, positions)
+ * </pre>
+ *
+ * Numbers are 4-byte big-endian integers, text is a length followed by UTF-8
+ * bytes, and positions use the variable-byte encoding of frozen position lists.
+ * When opened, only the documents and the term dictionary are read; position
+ * lists stay in the mapped file and are decoded from the page cache when used.
+ *
+ * @author tiffanyz
+ *
+ * @see PositionList#freeze()
+ */
+public class BinaryIndex {
+	/** Identifies the file format */
+	private static final int MAGIC = 0x53454958;
+	/** The version of the file format */
+	private static final int VERSION = 1;
+
+	/**
+	 * Writes the elements of index in binary format to file. The index is
+	 * written to a temporary file in the same directory first, which then
+	 * replaces the file, so a file that is being read from, such as one that
+	 * was loaded into this index, is never cut short.
+	 *
+	 * @param elements the elements to write
+	 * @param documents the table used to look up the location of each document
+	 * @param counts the word count of each document, indexed by document ID
+	 *        minus the first document ID
+	 * @param first the ID of the document counted by the first element of counts
+	 * @param path the file path to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void write(Map<String, Postings> elements, DocumentTable documents, int[] counts, int first, Path path) throws IOException {
+		Path absolute = path.toAbsolutePath();
+		Path temporary = absolute.resolveSibling(absolute.getFileName() + "." + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE) + ".tmp");
+		try {
+			writeTo(elements, documents, counts, first, temporary);
+			try {
+				Files.move(temporary, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Writes the elements of index in binary format to a new file.
+	 *
+	 * @param elements the elements to write
+	 * @param documents the table used to look up the location of each document
+	 * @param counts the word count of each document, indexed by document ID
+	 *        minus the first document ID
+	 * @param first the ID of the document counted by the first element of counts
+	 * @param path the file path to use
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void writeTo(Map<String, Postings> elements, DocumentTable documents, int[] counts, int first, Path path) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			int[] remap = new int[counts.length];
+			int numDocuments = 0;
+			for (int i = 0; i < counts.length; i++) {
+				remap[i] = counts[i] > 0 ? numDocuments++ : -1;
+			}
+			out.writeInt(numDocuments);
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] > 0) {
+					writeString(documents.location(first + i), out);
+					out.writeInt(counts[i]);
+				}
+			}
+
+			out.writeInt(elements.size());
+			for (var entry : elements.entrySet()) {
+				Postings postings = entry.getValue();
+				writeString(entry.getKey(), out);
+				out.writeInt(postings.size());
+				for (int i = 0; i < postings.size(); i++) {
+					ByteBuffer encoded = postings.positions(i).encode();
+					byte[] bytes = new byte[encoded.remaining()];
+					encoded.get(bytes);
+
+					out.writeInt(remap[postings.document(i) - first]);
+					out.writeInt(postings.positions(i).size());
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Memory-maps a binary index file and adds its contents to the index. The
+	 * added position lists are views of the mapped file. The whole file,
+	 * including every position list, is checked before anything is added, so
+	 * the index and its document table are left unchanged if the file is not
+	 * valid. Files larger than 2 GB cannot be mapped into a single buffer and
+	 * are rejected.
+	 *
+	 * @param path the file path to read
+	 * @param index the index to add the contents to
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 */
+	public static void read(Path path, InvertedIndex index) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Index file is too large to map: " + path);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			scan(buffer.duplicate(), path, null);
+			scan(buffer, path, index);
+		}
+		catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IOException("Truncated or corrupt index file: " + path, e);
+		}
+	}
+
+	/**
+	 * Reads the contents of a mapped binary index file, either only to check
+	 * that they are valid or to add them to an index.
+	 *
+	 * @param buffer the mapped file, positioned at its start
+	 * @param path the file path, used in error messages
+	 * @param index the index to add the contents to, or null to only check them
+	 * @throws IOException if the file is not a valid index
+	 */
+	private static void scan(ByteBuffer buffer, Path path, InvertedIndex index) throws IOException {
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new IOException("Not a binary index file: " + path);
+		}
+
+		int numDocuments = readLength(buffer);
+		int[] ids = new int[numDocuments];
+		int[] counts = new int[numDocuments];
+		for (int i = 0; i < numDocuments; i++) {
+			String location = readString(buffer);
+			ids[i] = index == null ? i : index.getDocuments().add(location);
+			counts[i] = buffer.getInt();
+		}
+
+		int numTerms = readLength(buffer);
+		for (int t = 0; t < numTerms; t++) {
+			String word = readString(buffer);
+			int numPostings = readLength(buffer);
+			for (int i = 0; i < numPostings; i++) {
+				int document = buffer.getInt();
+				int size = readLength(buffer);
+				int length = readLength(buffer);
+				ByteBuffer encoded = buffer.slice(buffer.position(), length);
+				buffer.position(buffer.position() + length);
+
+				if (document < 0 || document >= numDocuments) {
+					throw new IOException("Invalid document " + document + " in: " + path);
+				}
+				if (index == null) {
+					if (!PositionList.isValid(encoded, size)) {
+						throw new IOException("Invalid positions of " + word + " in: " + path);
+					}
+				}
+				else {
+					index.add(ids[document], word, new PositionList(encoded, size));
+				}
+				counts[document] -= size;
+			}
+		}
+
+		if (buffer.hasRemaining()) {
+			throw new IOException("Unexpected data at the end of: " + path);
+		}
+		for (int count : counts) {
+			if (count != 0) {
+				throw new IOException("Word counts do not match positions in: " + path);
+			}
+		}
+	}
+
+	/**
+	 * Writes the length of the text followed by its UTF-8 bytes.
+	 *
+	 * @param text the text to write
+	 * @param out the output to write to
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void writeString(String text, DataOutputStream out) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads text written by {@link #writeString(String, DataOutputStream)}.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the text read
+	 * @throws IOException if the length is not valid
+	 */
+	private static String readString(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[readLength(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a length or count, which can be no more than the number of bytes
+	 * left in the file.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the length read
+	 * @throws IOException if the length is negative or larger than the rest of
+	 *         the file
+	 */
+	private static int readLength(ByteBuffer buffer) throws IOException {
+		int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new IOException("Invalid length " + length + " with " + buffer.remaining() + " bytes left");
+		}
+		return length;
+	}
+}
@@ -0,0 +1,119 @@
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * A stemmer that remembers the stems of words it has seen recently, so common
+ * words are only stemmed once. The cache has a fixed number of slots, and each
+ * word can only be kept in the slot its hash picks, so a new word simply
+ * replaces the word in its slot. A word is looked up by its characters, so a
+ * word held in a reused buffer is only copied when it is not cached.
+ *
+ * Like the stemmer it wraps, this stemmer is not thread-safe. The hits and
+ * misses are counted for every cached stemmer together.
+ *
+ * @author tiffanyz
+ *
+ * @see TextStemmer#getStemmer()
+ */
+public class CachedStemmer implements Stemmer {
+	/** The largest number of words a cache can remember */
+	public static final int MAX_SIZE = 1 << 30;
+	/** The number of words found in every cache */
+	private static final LongAdder HITS = new LongAdder();
+	/** The number of words stemmed because they were not cached */
+	private static final LongAdder MISSES = new LongAdder();
+
+	/** the stemmer used for words that are not cached */
+	private final Stemmer stemmer;
+	/** the word cached in each slot, or null */
+	private final String[] words;
+	/** the stem of the word in each slot */
+	private final String[] stems;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param stemmer the stemmer used for words that are not cached
+	 * @param size the number of words to remember, rounded up to a power of two,
+	 *        or 0 to remember none
+	 * @throws IllegalArgumentException if the size is negative or larger than
+	 *         {@link #MAX_SIZE}
+	 */
+	public CachedStemmer(Stemmer stemmer, int size) {
+		if (size < 0 || size > MAX_SIZE) {
+			throw new IllegalArgumentException("Cache size must be between 0 and " + MAX_SIZE + ": " + size);
+		}
+		int slots = size <= 1 ? size : Integer.highestOneBit(size - 1) << 1;
+		this.stemmer = stemmer;
+		this.words = new String[slots];
+		this.stems = new String[slots];
+	}
+
+	/**
+	 * Returns the stem of the word, stemming it only if it is not cached.
+	 *
+	 * @param word the word to stem
+	 * @return the stem as a {@link String}
+	 */
+	@Override
+	public CharSequence stem(CharSequence word) {
+		if (words.length == 0) {
+			MISSES.increment();
+			return stemmer.stem(word).toString();
+		}
+
+		int hash = 0;
+		for (int i = 0; i < word.length(); i++) {
+			hash = 31 * hash + word.charAt(i);
+		}
+		int slot = (hash ^ (hash >>> 16)) & (words.length - 1);
+		if (words[slot] != null && words[slot].contentEquals(word)) {
+			HITS.increment();
+			return stems[slot];
+		}
+
+		MISSES.increment();
+		String stem = stemmer.stem(word).toString();
+		words[slot] = word.toString();
+		stems[slot] = stem;
+		return stem;
+	}
+
+	/**
+	 * @return the number of slots in the cache
+	 */
+	public int size() {
+		return words.length;
+	}
+
+	/**
+	 * @return the number of words found in any cache
+	 */
+	public static long getHits() {
+		return HITS.sum();
+	}
+
+	/**
+	 * @return the number of words stemmed because they were not cached
+	 */
+	public static long getMisses() {
+		return MISSES.sum();
+	}
+
+	/**
+	 * @return the fraction of words found in a cache, or 0 if none were stemmed
+	 */
+	public static double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0.0 : (double) hits / total;
+	}
+
+	/**
+	 * @return the hits, misses and hit rate of every cache
+	 */
+	public static String stats() {
+		return String.format("%d hits, %d misses (%.1f%% hit rate)", getHits(), getMisses(), 100 * getHitRate());
+	}
+}
@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Completes prefixes to the words of an index with the most documents. The
+ * words are stored in a radix trie, and every node keeps its best completions,
+ * worked out once when the trie is built. Completing a prefix walks down to the
+ * prefix and returns the list stored there, so it takes time proportional to
+ * the length of the prefix and does not depend on how many words start with it.
+ * The trie never changes after it is built, so it is safe to share between
+ * threads.
+ *
+ * Words may be put in groups, such as the words found in the text that share a
+ * stem. Only the best word of each group that starts with the prefix is listed,
+ * so one stem does not fill every completion with its variants.
+ *
+ * @author tiffanyz
+ *
+ * @see InvertedIndex#getCompletions(int)
+ */
+public class Completions {
+	/** The node of the empty prefix, which has an empty label */
+	private final Node root;
+	/** The number of completions kept for each prefix */
+	private final int limit;
+	/** The words in sorted order */
+	private final String[] words;
+	/** The number of documents of each word, parallel to {@link #words} */
+	private final int[] frequencies;
+	/** The number of times each word was seen, parallel to {@link #words} */
+	private final int[] uses;
+	/** The group of each word, parallel to {@link #words} */
+	private final int[] groups;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param words the words in sorted order, without duplicates
+	 * @param frequencies the number of documents of each word, parallel to words
+	 * @param uses the number of times each word was seen, parallel to words,
+	 *        which orders words in the same number of documents
+	 * @param groups the group of each word, parallel to words
+	 * @param limit the number of completions to keep for each prefix
+	 */
+	public Completions(String[] words, int[] frequencies, int[] uses, int[] groups, int limit) {
+		if (words.length != frequencies.length || words.length != uses.length || words.length != groups.length) {
+			throw new IllegalArgumentException("Every word needs a frequency, use and group: " + words.length);
+		}
+		if (limit < 1) {
+			throw new IllegalArgumentException("At least one completion must be kept: " + limit);
+		}
+		this.limit = limit;
+		this.words = words;
+		this.frequencies = frequencies;
+		this.uses = uses;
+		this.groups = groups;
+		this.root = new Node(new char[0]);
+		fill(root, 0, words.length, 0);
+	}
+
+	/**
+	 * @return the number of completions kept for each prefix
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Finds the words starting with the prefix that appear in the most
+	 * documents, including the prefix itself if it is a word. Words in the same
+	 * number of documents are listed with the most used first, and then in
+	 * sorted order. Only the first word of each group is listed.
+	 *
+	 * @param prefix the prefix to complete
+	 * @param n the number of completions to return, at most {@link #getLimit()}
+	 * @return the best completions, most documents first
+	 */
+	public List<String> complete(String prefix, int n) {
+		Node node = root;
+		int i = 0;
+		while (i < prefix.length()) {
+			int at = node.indexOf(prefix.charAt(i));
+			if (at < 0) {
+				return List.of();
+			}
+			Node child = node.children[at];
+			int matched = child.match(prefix, i);
+			if (matched < child.label.length && i + matched < prefix.length()) {
+				return List.of();
+			}
+			i += matched;
+			node = child;
+		}
+		int size = Math.min(Math.max(n, 0), node.top.length);
+		String[] found = new String[size];
+		for (int j = 0; j < size; j++) {
+			found[j] = words[node.top[j]];
+		}
+		return Arrays.asList(found);
+	}
+
+	/**
+	 * Builds the node for the words in the given range, which all start with the
+	 * first characters of the node's word, and its children.
+	 *
+	 * @param low the first word of the range
+	 * @param high the end of the range, which is not included
+	 * @param depth the length of the word of the parent node
+	 * @return the new node
+	 */
+	private Node build(int low, int high, int depth) {
+		String first = words[low];
+		String last = words[high - 1];
+		int length = depth;
+		while (length < first.length() && length < last.length() && first.charAt(length) == last.charAt(length)) {
+			length++;
+		}
+		Node node = new Node(first.substring(depth, length).toCharArray());
+		fill(node, low, high, length);
+		return node;
+	}
+
+	/**
+	 * Adds the children of a node and works out its best completions. Since the
+	 * words are sorted, the words of each child are next to each other. The
+	 * best completions of the node are the best of its own word and those of its
+	 * children, as each child already lists the best word of each of its groups.
+	 *
+	 * @param node the node to fill
+	 * @param low the first word of the node
+	 * @param high the end of the words of the node, which is not included
+	 * @param length the length of the word of the node
+	 */
+	private void fill(Node node, int low, int high, int length) {
+		ArrayList<Integer> candidates = new ArrayList<>();
+		if (low < high && words[low].length() == length) {
+			candidates.add(low);
+			low++;
+		}
+
+		ArrayList<Node> children = new ArrayList<>();
+		int start = low;
+		while (start < high) {
+			char key = words[start].charAt(length);
+			int end = start + 1;
+			while (end < high && words[end].charAt(length) == key) {
+				end++;
+			}
+			Node child = build(start, end, length);
+			children.add(child);
+			for (int word : child.top) {
+				candidates.add(word);
+			}
+			start = end;
+		}
+
+		node.children = children.toArray(new Node[0]);
+		node.keys = new char[node.children.length];
+		for (int i = 0; i < node.keys.length; i++) {
+			node.keys[i] = node.children[i].label[0];
+		}
+
+		candidates.sort(Comparator.<Integer>comparingInt(i -> -frequencies[i]).thenComparingInt(i -> -uses[i]).thenComparing(i -> words[i]));
+		int[] top = new int[Math.min(limit, candidates.size())];
+		Set<Integer> listed = new HashSet<>();
+		int size = 0;
+		for (int i = 0; i < candidates.size() && size < top.length; i++) {
+			if (listed.add(groups[candidates.get(i)])) {
+				top[size++] = candidates.get(i);
+			}
+		}
+		node.top = Arrays.copyOf(top, size);
+	}
+
+	/**
+	 * A node of the trie. The word of a node is made of the labels of every node
+	 * from the root down to it.
+	 */
+	private static class Node {
+		/** The characters added to the word of the parent node */
+		private final char[] label;
+		/** The first character of the label of each child, in increasing order */
+		private char[] keys;
+		/** The children, parallel to {@link #keys} */
+		private Node[] children;
+		/** The index of each of the best completions of the word of this node */
+		private int[] top;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param label the characters added to the word of the parent node
+		 */
+		public Node(char[] label) {
+			this.label = label;
+		}
+
+		/**
+		 * @param first the first character of the label of the child
+		 * @return the index of the child, or a negative number if there is none
+		 */
+		public int indexOf(char first) {
+			return Arrays.binarySearch(keys, first);
+		}
+
+		/**
+		 * @param word the word to compare with
+		 * @param from the index of the word to start comparing at
+		 * @return the number of characters of the label that match the word
+		 */
+		public int match(String word, int from) {
+			int length = Math.min(label.length, word.length() - from);
+			int i = 0;
+			while (i < length && label[i] == word.charAt(from + i)) {
+				i++;
+			}
+			return i;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Scores a document by the number of times the query matches it divided by
+ * the number of words in the document. Every word has the same weight.
+ *
+ * @author tiffanyz
+ */
+public class CountScorer implements Scorer {
+	@Override
+	public double weight(int documentFrequency, int numDocuments) {
+		return 1.0;
+	}
+
+	@Override
+	public double score(int frequency, double weight, int length, double averageLength) {
+		return weight * frequency / length;
+	}
+
+	/**
+	 * Divides the total number of matches by the word count, rather than adding
+	 * up the fraction of each word, so rounding is the same for every document
+	 * with the same counts.
+	 */
+	@Override
+	public double total(double count, double sum, int length) {
+		return count / length;
+	}
+
+	@Override
+	public String toString() {
+		return "count";
+	}
+}
@@ -1,55 +1,143 @@
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * Creating a recursive file listing.
- * 
+ *
+ * Files are handed to an action as soon as they are found, so the caller can
+ * start working on the first files while the rest of the tree is still being
+ * listed, and the listing is never held in memory. File names are matched
+ * against the include patterns without regard to case.
+ *
  * @author tiffanyz
  */
 public class DirectoryTraverser {
-	
+	/** The patterns of the files included by default */
+	public static final List<String> DEFAULT_INCLUDE = List.of("*.txt", "*.text");
+
+	/** the deepest level of subdirectories to look in, where 0 is the root only */
+	private final int maxDepth;
+	/** whether symbolic links are followed, or skipped */
+	private final boolean followLinks;
+	/** the matchers of the file names to include */
+	private final List<PathMatcher> include;
+
+	/**
+	 * Initializes the instance data with no depth limit, following symbolic
+	 * links and including text files.
+	 */
+	public DirectoryTraverser() {
+		this(Integer.MAX_VALUE, true, DEFAULT_INCLUDE);
+	}
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param maxDepth the deepest level of subdirectories to look in, where 0 is
+	 *        the root only
+	 * @param followLinks true to follow symbolic links, or false to skip them
+	 * @param include the glob patterns of the file names to include, such as
+	 *        {@code *.txt}
+	 * @throws IllegalArgumentException if the depth is negative, or if there
+	 *         are no patterns or one of them is invalid
+	 */
+	public DirectoryTraverser(int maxDepth, boolean followLinks, List<String> include) {
+		if (maxDepth < 0 || include.isEmpty()) {
+			throw new IllegalArgumentException("Invalid depth or include patterns: " + maxDepth + ", " + include);
+		}
+		this.maxDepth = maxDepth;
+		this.followLinks = followLinks;
+		this.include = new ArrayList<>();
+		for (String pattern : include) {
+			this.include.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.toLowerCase(Locale.ROOT)));
+		}
+	}
+
 	/**
 	 * Traverses through the directory and its subdirectories, returning a list of all the files
-	 * 
+	 *
 	 * @param root root directory to traverse on
 	 * @return a list of all the paths
 	 * @throws IOException if an I/O error occurs
 	 */
 	public static ArrayList<Path> traverse(Path root) throws IOException {
 		ArrayList<Path> paths = new ArrayList<>();
-		traverseDirectory(root, paths);
+		new DirectoryTraverser().traverse(root, paths::add);
 		return paths;
 	}
-	
+
 	/**
-	 * Traverses through the directory and its subdirectories, adding all files to the list
-	 * 
-	 * @param directory directory to traverse
-	 * @param paths a list of all the paths
-	 * @throws IOException if an I/O error occurs
+	 * Traverses through the directory and its subdirectories, running the
+	 * action on every included file as soon as it is found. If the root is not
+	 * a directory, the action is run on the root whatever its name. Directories
+	 * that symbolic links loop back to are skipped, and so is a root that is a
+	 * symbolic link when links are not followed.
+	 *
+	 * @param root root directory to traverse on
+	 * @param action the action to run on each file
+	 * @throws IOException if an I/O error occurs, or if the action throws one
 	 */
-	private static void traverseDirectory(Path directory, List<Path> paths) throws IOException {
-		if (Files.isDirectory(directory)) {
-			try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
-				for (Path path : listing) {
-					if (Files.isDirectory(path)) {
-						traverseDirectory(path, paths);
-					}
-					else {
-						String lower = path.toString().toLowerCase();
-						if (lower.endsWith(".txt") || lower.endsWith(".text")) {
-							paths.add(path);
-						}
+	public void traverse(Path root, FileAction action) throws IOException {
+		if (!followLinks && Files.isSymbolicLink(root)) {
+			return;
+		}
+		if (!Files.isDirectory(root)) {
+			action.accept(root);
+			return;
+		}
+
+		Set<FileVisitOption> options = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) : EnumSet.noneOf(FileVisitOption.class);
+		int depth = maxDepth == Integer.MAX_VALUE ? maxDepth : maxDepth + 1;
+		Files.walkFileTree(root, options, depth, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				if (attrs.isDirectory() || (!followLinks && attrs.isSymbolicLink())) {
+					return FileVisitResult.CONTINUE;
+				}
+				Path name = Path.of(file.getFileName().toString().toLowerCase(Locale.ROOT));
+				for (PathMatcher matcher : include) {
+					if (matcher.matches(name)) {
+						action.accept(file);
+						break;
 					}
 				}
+				return FileVisitResult.CONTINUE;
 			}
-		}
-		else {
-			paths.add(directory);
-		}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+				if (e instanceof FileSystemLoopException) {
+					return FileVisitResult.CONTINUE;
+				}
+				throw e;
+			}
+		});
+	}
+
+	/**
+	 * An action run on every file found, which may throw an I/O error
+	 */
+	@FunctionalInterface
+	public interface FileAction {
+		/**
+		 * Runs the action on a file
+		 *
+		 * @param file the file found
+		 * @throws IOException if an I/O error occurs
+		 */
+		void accept(Path file) throws IOException;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gives every location (a file path or a URL) a dense integer ID, so the index
+ * only stores and compares small integers. IDs are assigned in the order
+ * locations are first seen, starting from 0. This class is thread-safe, so a
+ * single table may be shared by several indexes. Looking up the location of
+ * an ID takes no lock, as search results do it every time they are compared.
+ *
+ * @author tiffanyz
+ */
+public class DocumentTable {
+	/** Maps each location to its ID */
+	private final Map<String, Integer> ids;
+	/**
+	 * Maps each ID back to its location, replaced by a larger copy when full.
+	 * Written under this object's lock, and written again after every new
+	 * location so readers that see the ID also see the location.
+	 */
+	private volatile String[] locations;
+	/** The number of locations in the table, guarded by this object */
+	private int size;
+
+	/**
+	 * Constructor: creates an empty table
+	 */
+	public DocumentTable() {
+		this.ids = new HashMap<>();
+		this.locations = new String[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the ID of the location, assigning a new one if the location has
+	 * not been seen before.
+	 *
+	 * @param location the location to look up
+	 * @return the ID of the location
+	 */
+	public synchronized int add(String location) {
+		Integer id = ids.get(location);
+		if (id == null) {
+			id = size++;
+			ids.put(location, id);
+			String[] array = locations;
+			if (id == array.length) {
+				array = Arrays.copyOf(array, array.length * 2);
+			}
+			array[id] = location;
+			locations = array;
+		}
+		return id;
+	}
+
+	/**
+	 * @param location the location to look up
+	 * @return the ID of the location, or -1 if it has not been added
+	 */
+	public synchronized int find(String location) {
+		Integer id = ids.get(location);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @param id the ID to look up
+	 * @return the location with the given ID
+	 */
+	public String location(int id) {
+		String location = locations[id];
+		if (location == null) {
+			throw new IndexOutOfBoundsException(id);
+		}
+		return location;
+	}
+
+	/**
+	 * @return the number of locations in the table
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
@@ -2,6 +2,7 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 
@@ -26,110 +27,280 @@ public class Driver {
 		}
 		ArgumentMap inputMap = new ArgumentMap(args);
 		
+		Scorer scorer = Scorer.DEFAULT;
+		if (inputMap.hasFlag("-scorer")) {
+			try {
+				scorer = Scorer.forName(inputMap.getString("-scorer", "count"));
+			}
+			catch (IllegalArgumentException e) {
+				System.out.println("Invalid scorer, use count or bm25. ");
+				return;
+			}
+		}
+		
+		if (inputMap.hasFlag("-stemcache")) {
+			int size = inputMap.getInteger("-stemcache", TextStemmer.DEFAULT_CACHE_SIZE);
+			if (size < 0 || size > CachedStemmer.MAX_SIZE) {
+				System.out.println("Invalid stem cache size. ");
+				return;
+			}
+			TextStemmer.setCacheSize(size);
+		}
+		
 		InvertedIndex index = new InvertedIndex();
 		SafeInvertedIndex safeIndex = new SafeInvertedIndex();
 		InvertedIndexBuilder indexBuilder;
 		ResultBuilderInterface resultBuilder;
 		
 		WorkQueue queue = null;
+		WorkQueue mergeQueue = null;
+		SegmentedInvertedIndex segmentedIndex = null;
+		SnapshotInvertedIndex snapshotIndex = null;
+		PipelinedInvertedIndexBuilder pipeline = null;
 		
-		if (inputMap.hasFlag("-threads") || inputMap.hasFlag("-url") || inputMap.hasFlag("-server")) {
-			int threads = inputMap.getInteger("-threads", 5);
-			if (threads < 1) {
-				System.out.println("Invalid number of threads. ");
-				return;
+		try {
+			if (inputMap.hasFlag("-threads") || inputMap.hasFlag("-url") || inputMap.hasFlag("-server")) {
+				int threads = inputMap.getInteger("-threads", 5);
+				if (threads < 1) {
+					System.out.println("Invalid number of threads. ");
+					return;
+				}
+				WorkQueue.Policy policy;
+				int capacity = inputMap.getInteger("-capacity", 0);
+				try {
+					policy = WorkQueue.Policy.forName(inputMap.getString("-policy", "block"));
+				}
+				catch (IllegalArgumentException e) {
+					policy = null;
+				}
+				if (policy == null || capacity < 0) {
+					System.out.println("Invalid queue capacity or policy, use block, caller-runs or drop. ");
+					return;
+				}
+				int kinds = 0;
+				for (String flag : List.of("-segments", "-stripes", "-snapshot")) {
+					if (inputMap.hasFlag(flag)) {
+						kinds++;
+					}
+				}
+				if (kinds > 1) {
+					System.out.println("Invalid index options, use only one of -segments, -stripes or -snapshot. ");
+					return;
+				}
+				queue = new WorkQueue(threads, false, capacity, policy);
+				if (inputMap.hasFlag("-segments")) {
+					int mergeFactor = inputMap.getInteger("-segments", 10);
+					int merges = inputMap.getInteger("-merges", 1);
+					if (mergeFactor < 2 || merges < 1) {
+						System.out.println("Invalid merge factor or number of merge threads. ");
+						return;
+					}
+					mergeQueue = new WorkQueue(merges);
+					segmentedIndex = new SegmentedInvertedIndex(mergeQueue, mergeFactor, inputMap.getInteger("-segmentsize", 10000000));
+					safeIndex = segmentedIndex;
+				}
+				else if (inputMap.hasFlag("-stripes")) {
+					int stripes = inputMap.getInteger("-stripes", StripedInvertedIndex.DEFAULT_STRIPES);
+					if (stripes < 1) {
+						System.out.println("Invalid number of stripes. ");
+						return;
+					}
+					safeIndex = new StripedInvertedIndex(stripes);
+				}
+				else if (inputMap.hasFlag("-snapshot")) {
+					int interval = inputMap.getInteger("-snapshot", SnapshotInvertedIndex.DEFAULT_INTERVAL);
+					if (interval < 1) {
+						System.out.println("Invalid snapshot interval. ");
+						return;
+					}
+					snapshotIndex = new SnapshotInvertedIndex(interval);
+					safeIndex = snapshotIndex;
+				}
+				index = safeIndex;
+				int chunkSize = inputMap.getInteger("-chunk", MultiInvertedIndexBuilder.DEFAULT_CHUNK_SIZE);
+				if (chunkSize < MultiInvertedIndexBuilder.MIN_CHUNK_SIZE) {
+					System.out.println("Invalid chunk size. ");
+					return;
+				}
+				if (inputMap.hasFlag("-pipeline")) {
+					try {
+						String[] counts = inputMap.getString("-pipeline", "1,1," + threads + ",1").split(",");
+						int[] stageThreads = new int[counts.length];
+						for (int i = 0; i < counts.length; i++) {
+							stageThreads[i] = Integer.parseInt(counts[i].strip());
+						}
+						pipeline = new PipelinedInvertedIndexBuilder(safeIndex, stageThreads);
+					}
+					catch (IllegalArgumentException e) {
+						System.out.println("Invalid pipeline threads, use read,tokenize,stem,invert. ");
+						return;
+					}
+					indexBuilder = pipeline;
+				}
+				else {
+					indexBuilder = new MultiInvertedIndexBuilder(safeIndex, queue, chunkSize);
+				}
+				resultBuilder = new MultiResultBuilder(safeIndex, queue, scorer);
 			}
-			queue = new WorkQueue(threads);
-			index = safeIndex;
-			indexBuilder = new MultiInvertedIndexBuilder(safeIndex, queue);
-			resultBuilder = new MultiResultBuilder(safeIndex, queue);
-		}
-		else {
-			indexBuilder = new InvertedIndexBuilder(index);
-			resultBuilder = new ResultBuilder(index);
-		}
-		
-		if (inputMap.hasFlag("-url")) {			
-			URL inputURL = null;
-			try {
-				inputURL = inputMap.getURL("-url");
-			} catch (MalformedURLException e) {
-				System.out.println("Invalid input of URL. ");
+			else {
+				indexBuilder = new InvertedIndexBuilder(index);
+				resultBuilder = new ResultBuilder(index, scorer);
 			}
-			int max = 1;
-			if (inputMap.hasFlag("-max")) {
-				max = inputMap.getInteger("-max", 1);
+		
+			if (inputMap.hasFlag("-load")) {
+				Path loadPath = inputMap.getPath("-load", "index.bin");
+				try {
+					index.fromBinary(loadPath);
+				}
+				catch (IOException e) {
+					System.out.println("Unable to load binary index from: " + loadPath);
+				}
 			}
-			WebInvertedIndexBuilder webCrawler = new WebInvertedIndexBuilder(safeIndex, queue, max);
-			try {
-				webCrawler.build(inputURL);
+		
+			if (inputMap.hasFlag("-url")) {			
+				URL inputURL = null;
+				try {
+					inputURL = inputMap.getURL("-url");
+				} catch (MalformedURLException e) {
+					System.out.println("Invalid input of URL. ");
+				}
+				int max = 1;
+				if (inputMap.hasFlag("-max")) {
+					max = inputMap.getInteger("-max", 1);
+				}
+				WorkQueue crawlQueue = queue;
+				if (inputMap.hasFlag("-virtual")) {
+					crawlQueue = new WorkQueue(queue.size(), true);
+				}
+				WebInvertedIndexBuilder webCrawler = new WebInvertedIndexBuilder(safeIndex, crawlQueue, max);
+				try {
+					webCrawler.build(inputURL);
+				}
+				catch (Exception e) {
+					System.out.println("Unable to work on the given input URL: " + inputURL);
+				}
+				if (crawlQueue != queue) {
+					crawlQueue.shutdown();
+				}
 			}
-			catch (Exception e) {
-				System.out.println("Unable to work on the given input URL: " + inputURL);
+		
+			if (inputMap.hasFlag("-path")) {
+				Path inputPath = inputMap.getPath("-path");
+				DirectoryTraverser traverser;
+				try {
+					List<String> include = inputMap.hasValue("-include")
+							? List.of(inputMap.getString("-include").split(","))
+							: DirectoryTraverser.DEFAULT_INCLUDE;
+					traverser = new DirectoryTraverser(inputMap.getInteger("-depth", Integer.MAX_VALUE),
+							!inputMap.hasFlag("-nofollow"), include);
+				}
+				catch (IllegalArgumentException e) {
+					System.out.println("Invalid depth or include patterns. ");
+					return;
+				}
+				try {
+					indexBuilder.build(inputPath, traverser);
+				}
+				catch (Exception e) {
+					System.out.println("Unable to work on the given input directory: " + inputPath);
+				}
 			}
-		}
 		
-		if (inputMap.hasFlag("-path")) {
-			Path inputPath = inputMap.getPath("-path");
-			try {
-				indexBuilder.build(inputPath);
+			if (segmentedIndex != null) {
+				segmentedIndex.finishMerges();
+				System.out.printf("Index has %d segments after %d merges (%.0f positions merged per second). %n",
+						segmentedIndex.numSegments(), segmentedIndex.getMergeCount(), segmentedIndex.getMergeThroughput());
 			}
-			catch (Exception e) {
-				System.out.println("Unable to work on the given input directory: " + inputPath);
+		
+			if (snapshotIndex != null) {
+				snapshotIndex.publish();
 			}
-		}
 		
-		if (inputMap.hasFlag("-queries")) {
-			Path queryPath = inputMap.getPath("-queries");
-			try {
-				resultBuilder.build(queryPath, inputMap.hasFlag("-exact"));
+			if (inputMap.hasFlag("-compress")) {
+				long positions = index.getTotalCount();
+				long bytes = index.compress();
+				System.out.printf("Compressed %d positions from %d to %d bytes (%.2f bytes per position). %n",
+						positions, positions * Integer.BYTES, bytes, positions == 0 ? 0.0 : (double) bytes / positions);
 			}
-			catch (Exception e) {
-				System.out.println("Unable to work on the given queries file: " + queryPath);
+		
+			if (inputMap.hasFlag("-queries")) {
+				Path queryPath = inputMap.getPath("-queries");
+				try {
+					resultBuilder.build(queryPath, inputMap.hasFlag("-exact"));
+				}
+				catch (Exception e) {
+					System.out.println("Unable to work on the given queries file: " + queryPath);
+				}
 			}
-		}
 		
-		if (inputMap.hasFlag("-index")) {
-			Path indexPath = inputMap.getPath("-index", "index.json");
-			try {
-				index.toJsonIndex(indexPath);
+			if (inputMap.hasFlag("-index")) {
+				Path indexPath = inputMap.getPath("-index", "index.json");
+				try {
+					index.toJsonIndex(indexPath);
+				}
+				catch (IOException e) {
+					System.out.println("Unable to write index in Json format into:  " + indexPath);
+				}
 			}
-			catch (IOException e) {
-				System.out.println("Unable to write index in Json format into:  " + indexPath);
+		
+			if (inputMap.hasFlag("-binary")) {
+				Path binaryPath = inputMap.getPath("-binary", "index.bin");
+				try {
+					index.toBinary(binaryPath);
+				}
+				catch (IOException e) {
+					System.out.println("Unable to write index in binary format into: " + binaryPath);
+				}
 			}
-		}
 		
-		if (inputMap.hasFlag("-counts")) {
-			Path countsPath = inputMap.getPath("-counts", "counts.json");
-			try {
-				index.toJsonCount(countsPath);
+			if (inputMap.hasFlag("-counts")) {
+				Path countsPath = inputMap.getPath("-counts", "counts.json");
+				try {
+					index.toJsonCount(countsPath);
+				}
+				catch (IOException e) {
+					System.out.println("Unable to write counts in Json format into: " + countsPath);
+				}
 			}
-			catch (IOException e) {
-				System.out.println("Unable to write counts in Json format into: " + countsPath);
+		
+			if (inputMap.hasFlag("-results")) {
+				Path resultsPath = inputMap.getPath("-results", "results.json");
+				try {
+					resultBuilder.toJsonResult(resultsPath);
+				}
+				catch (IOException e) {
+					System.out.println("Unable to write resuls in Json format into: " + resultsPath);
+				}
 			}
-		}
 		
-		if (inputMap.hasFlag("-results")) {
-			Path resultsPath = inputMap.getPath("-results", "results.json");
-			try {
-				resultBuilder.toJsonResult(resultsPath);
+			if (inputMap.hasFlag("-server")) {
+				int port = inputMap.getInteger("-server", 8080);
+				try {
+					SearchEngine.build(safeIndex, port, inputMap.hasFlag("-virtual"));
+				} catch (Exception e) {
+					System.out.println("Unable to work on the server. ");
+				}
+			}	
+
+			if (inputMap.hasFlag("-stemcache")) {
+				System.out.println("Stem cache: " + CachedStemmer.stats());
+			}
+
+			if (pipeline != null) {
+				System.out.println("Pipeline: " + pipeline);
 			}
-			catch (IOException e) {
-				System.out.println("Unable to write resuls in Json format into: " + resultsPath);
+
+			if (queue != null && queue.getCapacity() > 0) {
+				System.out.println("Work queue: " + queue);
 			}
 		}
-		
-		if (inputMap.hasFlag("-server")) {
-			int port = inputMap.getInteger("-server", 8080);
-			try {
-				SearchEngine.build(safeIndex, port);
-			} catch (Exception e) {
-				System.out.println("Unable to work on the server. ");
+		finally {
+			if (queue != null) {
+				queue.shutdown();
+			}
+			if (mergeQueue != null) {
+				mergeQueue.shutdown();
 			}
-		}	
-
-		if (queue != null) {
-			queue.shutdown();
 		}
 	}
 }
\ No newline at end of file
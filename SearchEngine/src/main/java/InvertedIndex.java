@@ -1,12 +1,19 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Indexing the UNIQUE words that were found in a text file.
@@ -14,17 +21,68 @@ import java.util.TreeSet;
  * @author tiffanyz
  */
 public class InvertedIndex {
+	/** the margin that keeps rounding errors from pruning a result that ties the k-th best */
+	private static final double EPSILON = 1e-9;
 	/** Declaration and initialization of the index */
-	private final TreeMap<String, Map<String, Set<Integer>>> index;
-	/** a map to store the word count */
-	private final Map<String, Integer> counts;
+	private final TermTrie index;
+	/** the table of locations that gives each location its document ID */
+	private final DocumentTable documents;
+	/** the words each stem was found as */
+	private final SurfaceForms surfaces;
+	/** the word count of each document, indexed by document ID minus {@link #first} */
+	private int[] counts;
+	/** the ID of the document counted by the first element of the counts */
+	private int first;
+	/** the total word count of all documents */
+	private long totalCount;
+	/** the number of documents with at least one word */
+	private int numDocuments;
+	/** the score bound of each searched postings for each scorer, or null after the index changes */
+	private volatile Map<Scorer, Map<Postings, Double>> maxScores;
+	/** a number that changes whenever the words or counts of the index change */
+	private final AtomicLong version;
 
 	/**
 	 * Constructor: creates a new map
 	 */
 	public InvertedIndex() {
-		this.index = new TreeMap<>();
-		this.counts = new TreeMap<>();
+		this(new DocumentTable());
+	}
+
+	/**
+	 * Constructor: creates a new map that shares the given document table, so
+	 * document IDs are the same across every index that uses the table
+	 * 
+	 * @param documents the table of locations to use
+	 */
+	public InvertedIndex(DocumentTable documents) {
+		this.index = new TermTrie();
+		this.documents = documents;
+		this.surfaces = new SurfaceForms();
+		this.counts = new int[0];
+		this.first = 0;
+		this.totalCount = 0;
+		this.numDocuments = 0;
+		this.maxScores = null;
+		this.version = new AtomicLong();
+	}
+
+	/**
+	 * @return the table of locations used by this index
+	 */
+	public DocumentTable getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Returns the words each stem of this index was found as. The builders
+	 * count the words as they stem them, and adding an index to this one adds
+	 * its words too.
+	 *
+	 * @return the words each stem was found as, which is thread-safe
+	 */
+	public final SurfaceForms getSurfaceForms() {
+		return surfaces;
 	}
 
 	/**
@@ -34,8 +92,9 @@ public class InvertedIndex {
 	 * @param words the words found in the given location
 	 */
 	public void add(String location, ArrayList<String> words) {
+		int document = documents.add(location);
 		for (int i = 0; i < words.size(); i++) {
-			add(location, words.get(i), i);
+			addPosition(document, words.get(i), i);
 		}
 	}
 	
@@ -47,12 +106,134 @@ public class InvertedIndex {
 	 * @param position the index of where the word is found in the given location
 	 */
 	public void add(String location, String word, int position) {
-		index.putIfAbsent(word, new TreeMap<>());
-		index.get(word).putIfAbsent(location, new TreeSet<>());
+		addPosition(documents.add(location), word, position);
+	}
+	
+	/**
+	 * Adds the document and the word with its position.
+	 * 
+	 * @param document the ID of the location where the word is found
+	 * @param word the word found in the given location
+	 * @param position the index of where the word is found in the given location
+	 * 
+	 * @see DocumentTable#add(String)
+	 */
+	public void add(int document, String word, int position) {
+		addPosition(document, word, position);
+	}
+	
+	/**
+	 * Adds the document and the word with all of its positions. If the word is
+	 * new to the document, the position list is stored as given rather than
+	 * copied, so frozen lists keep their compact form.
+	 * 
+	 * @param document the ID of the location where the word is found
+	 * @param word the word found in the given location
+	 * @param positions the positions of the word in the given location
+	 */
+	public void add(int document, String word, PositionList positions) {
+		indexChanged();
+		addCount(document, addPositions(document, word, positions));
+	}
+	
+	/**
+	 * Adds the positions of the word in the document to its postings, without
+	 * changing the word counts. If the word is new to the document, the
+	 * position list is stored as given rather than copied. Otherwise the list
+	 * already stored is replaced by a merged copy instead of being changed, as
+	 * it may be shared with another index.
+	 * 
+	 * @param document the ID of the location where the word is found
+	 * @param word the word found in the given location
+	 * @param positions the positions of the word in the given location
+	 * @return the number of positions that were not in the index before
+	 * 
+	 * @see #addCount(int, int)
+	 */
+	protected int addPositions(int document, String word, PositionList positions) {
+		Postings postings = index.get(word);
+		if (postings == null) {
+			postings = new Postings();
+			index.put(word, postings);
+		}
+
+		PositionList existing = postings.get(document);
+		if (existing == null) {
+			postings.put(document, positions);
+			return positions.size();
+		}
+		PositionList merged = new PositionList();
+		merged.addAll(existing);
+		merged.addAll(positions);
+		postings.put(document, merged);
+		return merged.size() - existing.size();
+	}
+	
+	/**
+	 * Adds to the word count of the document.
+	 * 
+	 * @param document the document ID
+	 * @param added the number of positions added to the document
+	 */
+	protected void addCount(int document, int added) {
+		if (added > 0) {
+			int index = countIndex(document);
+			if (counts[index] == 0) {
+				numDocuments++;
+			}
+			counts[index] += added;
+			totalCount += added;
+		}
+	}
+	
+	/**
+	 * Adds the document and the word with its position.
+	 * 
+	 * @param document the ID of the location where the word is found
+	 * @param word the word found in the given location
+	 * @param position the index of where the word is found in the given location
+	 */
+	private void addPosition(int document, String word, int position) {
+		indexChanged();
+		Postings postings = index.get(word);
+		if (postings == null) {
+			postings = new Postings();
+			index.put(word, postings);
+		}
 
-		if (index.get(word).get(location).add(position+1)) {
-			counts.put(location, counts.getOrDefault(location, 0) + 1);
+		if (postings.add(document).add(position+1)) {
+			int index = countIndex(document);
+			if (counts[index]++ == 0) {
+				numDocuments++;
+			}
+			totalCount++;
+		}
+	}
+	
+	/**
+	 * Makes sure the counts array covers the document. The array only spans the
+	 * range of document IDs this index has seen, so indexes that share a large
+	 * document table stay small.
+	 * 
+	 * @param document the document ID
+	 * @return the index of the document in the counts array
+	 */
+	private int countIndex(int document) {
+		if (counts.length == 0) {
+			first = document;
+			counts = new int[1];
+		}
+		else if (document < first) {
+			int start = Math.max(0, Math.min(document, first - counts.length));
+			int[] grown = new int[counts.length + first - start];
+			System.arraycopy(counts, 0, grown, first - start, counts.length);
+			counts = grown;
+			first = start;
 		}
+		else if (document - first >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(document - first + 1, counts.length * 2));
+		}
+		return document - first;
 	}
 	
 	/**
@@ -61,25 +242,98 @@ public class InvertedIndex {
 	 * @param other index to be added
 	 */
 	public void addAll(InvertedIndex other) {
-		for (String word : other.index.keySet()) {
-			if (!index.containsKey(word)) {
-				index.put(word, other.index.get(word));
+		indexChanged();
+		int[] remap = mapDocuments(other);
+		addPostings(other.index.entrySet(), remap);
+		addCounts(other, remap);
+		surfaces.addAll(other.surfaces);
+	}
+	
+	/**
+	 * Gives every document of the other index an ID in this index's document
+	 * table.
+	 * 
+	 * @param other the index to be added
+	 * @return the ID of each document of the other index in this index, or null
+	 *         if both indexes share the same document table
+	 */
+	protected int[] mapDocuments(InvertedIndex other) {
+		if (other.documents == documents) {
+			return null;
+		}
+		int[] remap = new int[other.first + other.counts.length];
+		for (int i = 0; i < other.counts.length; i++) {
+			int document = other.first + i;
+			remap[document] = other.counts[i] > 0 ? documents.add(other.documents.location(document)) : -1;
+		}
+		return remap;
+	}
+	
+	/**
+	 * Adds the postings of the given words, without changing the word counts.
+	 * 
+	 * @param entries the words to add with their postings
+	 * @param remap the document IDs to use in this index
+	 * 
+	 * @see #mapDocuments(InvertedIndex)
+	 */
+	protected void addPostings(Iterable<Map.Entry<String, Postings>> entries, int[] remap) {
+		for (var entry : entries) {
+			Postings postings = index.get(entry.getKey());
+			if (postings == null) {
+				postings = new Postings();
+				index.put(entry.getKey(), postings);
 			}
-			else {
-				for (String location : other.index.get(word).keySet()) {
-					if (!index.get(word).containsKey(location)) {
-						index.get(word).put(location, other.index.get(word).get(location));
-					}
-					else {
-						index.get(word).get(location).addAll(other.index.get(word).get(location));
-					}
+			postings.addAll(entry.getValue(), remap);
+		}
+	}
+	
+	/**
+	 * Adds the word counts of the documents of the other index that this index
+	 * has not counted yet.
+	 * 
+	 * @param other the index to be added
+	 * @param remap the document IDs to use in this index
+	 * 
+	 * @see #mapDocuments(InvertedIndex)
+	 */
+	protected void addCounts(InvertedIndex other, int[] remap) {
+		for (int i = 0; i < other.counts.length; i++) {
+			if (other.counts[i] > 0) {
+				int document = remap == null ? other.first + i : remap[other.first + i];
+				int index = countIndex(document);
+				if (counts[index] == 0) {
+					counts[index] = other.counts[i];
+					numDocuments++;
+					totalCount += other.counts[i];
 				}
 			}
 		}
-
-		for (String location : other.counts.keySet()) {
-			counts.putIfAbsent(location, other.counts.get(location));
+	}
+	
+	/**
+	 * @return the words of the index with their postings, in sorted order
+	 */
+	protected Set<Map.Entry<String, Postings>> getEntries() {
+		return index.entrySet();
+	}
+	
+	/**
+	 * Compresses the positions of every word in every location. Positions added
+	 * afterwards still work, but decompress the affected position lists again.
+	 * 
+	 * @return the number of bytes used by the compressed positions
+	 * 
+	 * @see PositionList#freeze()
+	 */
+	public long compress() {
+		long bytes = 0;
+		for (Postings postings : index.values()) {
+			for (int i = 0; i < postings.size(); i++) {
+				bytes += postings.positions(i).freeze();
+			}
 		}
+		return bytes;
 	}
 	
 	/**
@@ -103,7 +357,8 @@ public class InvertedIndex {
 	 * @return number of times the word appears in the given location
 	 */
 	public int numPositions(String word, String location) {
-		return hasLocation(word, location) ? index.get(word).get(location).size() : 0;
+		PositionList positions = getPositionList(word, location);
+		return positions != null ? positions.size() : 0;
 	}
 	
 	/**
@@ -124,7 +379,7 @@ public class InvertedIndex {
 	 * @return true if the given word appears in the given location
 	 */
 	public boolean hasLocation(String word, String location) {
-		return index.containsKey(word) && index.get(word).containsKey(location);
+		return getPositionList(word, location) != null;
 	}
 	
 	/**
@@ -134,7 +389,19 @@ public class InvertedIndex {
 	 * @return true if position exists in the index under word and location
 	 */
 	public boolean hasPosition(String word, String location, int position) {
-		return index.containsKey(word) && index.get(word).containsKey(location) && index.get(word).get(location).contains(position);
+		PositionList positions = getPositionList(word, location);
+		return positions != null && positions.contains(position);
+	}
+	
+	/**
+	 * @param word used to search
+	 * @param location used to search
+	 * @return the positions of the word in the location, or null if not found
+	 */
+	private PositionList getPositionList(String word, String location) {
+		Postings postings = index.get(word);
+		int document = documents.find(location);
+		return postings != null && document >= 0 ? postings.get(document) : null;
 	}
 	
 	/**
@@ -144,12 +411,88 @@ public class InvertedIndex {
 		return Collections.unmodifiableSet(index.keySet());
 	}
 	
+	/**
+	 * Ranks the completions of every prefix of the words in the index by the
+	 * number of documents each word appears in. The words completed are those
+	 * found in the text, so a prefix of a word completes even if its stem does
+	 * not start with the prefix, and each word counts the documents of its stem.
+	 * The words of one stem are grouped, and a stem no word was recorded for,
+	 * such as one loaded from a binary file, is completed as itself.
+	 * 
+	 * @param limit the number of completions to keep for each prefix
+	 * @return the completions of the words in the index
+	 */
+	public Completions getCompletions(int limit) {
+		List<InvertedIndex> parts = getParts();
+		Map<String, Postings> words = index;
+		if (parts.size() > 1) {
+			TermTrie merged = new TermTrie();
+			for (InvertedIndex part : parts) {
+				for (var entry : part.index.entrySet()) {
+					merged.putIfAbsent(entry.getKey(), entry.getValue());
+				}
+			}
+			words = merged;
+		}
+
+		String[] sorted = new String[words.size()];
+		int[] frequencies = new int[sorted.length];
+		int i = 0;
+		for (var entry : words.entrySet()) {
+			sorted[i] = entry.getKey();
+			frequencies[i] = entry.getValue().size();
+			if (parts.size() > 1) {
+				frequencies[i] = 0;
+				for (InvertedIndex part : getParts(sorted[i])) {
+					Postings postings = part.index.get(sorted[i]);
+					frequencies[i] += postings != null ? postings.size() : 0;
+				}
+			}
+			i++;
+		}
+
+		TreeMap<String, int[]> found = new TreeMap<>();
+		for (i = 0; i < sorted.length; i++) {
+			Map<String, Integer> forms = surfaces.getWords(sorted[i]);
+			if (forms.isEmpty()) {
+				forms = Map.of(sorted[i], 0);
+			}
+			for (var form : forms.entrySet()) {
+				int[] previous = found.get(form.getKey());
+				if (previous == null || previous[0] < frequencies[i]) {
+					found.put(form.getKey(), new int[] { frequencies[i], form.getValue(), i });
+				}
+			}
+		}
+
+		String[] completed = found.keySet().toArray(new String[0]);
+		int[] documents = new int[completed.length];
+		int[] uses = new int[completed.length];
+		int[] groups = new int[completed.length];
+		i = 0;
+		for (int[] values : found.values()) {
+			documents[i] = values[0];
+			uses[i] = values[1];
+			groups[i] = values[2];
+			i++;
+		}
+		return new Completions(completed, documents, uses, groups, limit);
+	}
+	
 	/**
 	 * @param word used to search
 	 * @return a set of all the locations that the given word appears
 	 */
 	public Set<String> getLocations(String word) {
-		return hasWord(word) ? Collections.unmodifiableSet(index.get(word).keySet()) : Collections.emptySet();
+		Postings postings = index.get(word);
+		if (postings == null) {
+			return Collections.emptySet();
+		}
+		TreeSet<String> locations = new TreeSet<>();
+		for (int i = 0; i < postings.size(); i++) {
+			locations.add(documents.location(postings.document(i)));
+		}
+		return Collections.unmodifiableSet(locations);
 	}
 	
 	/**
@@ -158,14 +501,28 @@ public class InvertedIndex {
 	 * @return a set of all the positions that the given word appears in the given location
 	 */
 	public Set<Integer> getPositions(String word, String location) {
-		return hasLocation(word, location) ? Collections.unmodifiableSet(index.get(word).get(location)) : Collections.emptySet();
+		PositionList positions = getPositionList(word, location);
+		return positions != null ? positions.asSet() : Collections.emptySet();
 	}
 	
 	/**
 	 * @return a set of all the locations in the counts
 	 */
 	public Set<String> getCountsLocations() {
-		return Collections.unmodifiableSet(counts.keySet());
+		return Collections.unmodifiableSet(getCounts().keySet());
+	}
+	
+	/**
+	 * @return a map from each location to its word count, sorted by location
+	 */
+	private TreeMap<String, Integer> getCounts() {
+		TreeMap<String, Integer> locations = new TreeMap<>();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				locations.put(documents.location(first + i), counts[i]);
+			}
+		}
+		return locations;
 	}
 	
 	/**
@@ -173,7 +530,16 @@ public class InvertedIndex {
 	 * @return the number of total word count in the location
 	 */
 	public int getCount(String location) {
-		return counts.getOrDefault(location, 0);
+		int document = documents.find(location);
+		return document >= 0 ? getCount(document) : 0;
+	}
+	
+	/**
+	 * @return the total word count of all locations, which is the number of
+	 *         positions stored in the index
+	 */
+	public long getTotalCount() {
+		return totalCount;
 	}
 	
 	/**
@@ -183,16 +549,18 @@ public class InvertedIndex {
 	 * @return a list of exact search results
 	 */
 	public ArrayList<SearchResult> exactSearch(Set<String> queries) {
-		ArrayList<SearchResult> entries = new ArrayList<>();
-		Map<String, SearchResult> lookupMap = new HashMap<>();
-		for (String query : queries) {
-			if (index.containsKey(query)) {
-				performSearch(entries, query, lookupMap);
-			}
-		}		
-		Collections.sort(entries);
-		
-		return entries;
+		return allResults(matches(queries, true, Scorer.DEFAULT), Scorer.DEFAULT);
+	}
+	
+	/**
+	 * Do exact search, keeping only the best results
+	 * 
+	 * @param queries to do the search on
+	 * @param k the maximum number of results to return
+	 * @return a list of at most k exact search results
+	 */
+	public ArrayList<SearchResult> exactSearch(Set<String> queries, int k) {
+		return topResults(matches(queries, true, Scorer.DEFAULT), k, Scorer.DEFAULT);
 	}
 	
 	/**
@@ -202,22 +570,18 @@ public class InvertedIndex {
 	 * @return a list of partial search results
 	 */
 	public ArrayList<SearchResult> partialSearch(Set<String> queries) {
-		ArrayList<SearchResult> entries = new ArrayList<>();
-		Map<String, SearchResult> lookupMap = new HashMap<>();
-		for (String query : queries) {
-			for (var entrySet : index.tailMap(query).entrySet()) {
-				String word = entrySet.getKey();
-				if (!word.startsWith(query)) {
-					break;
-				}
-				assert word.startsWith(query);
-				performSearch(entries, word, lookupMap);
-				
-			}
-		}
-		Collections.sort(entries);
-		
-		return entries;
+		return allResults(matches(queries, false, Scorer.DEFAULT), Scorer.DEFAULT);
+	}
+	
+	/**
+	 * Do partial search, keeping only the best results
+	 * 
+	 * @param queries to do the search on
+	 * @param k the maximum number of results to return
+	 * @return a list of at most k partial search results
+	 */
+	public ArrayList<SearchResult> partialSearch(Set<String> queries, int k) {
+		return topResults(matches(queries, false, Scorer.DEFAULT), k, Scorer.DEFAULT);
 	}
 	
 	/**
@@ -231,33 +595,591 @@ public class InvertedIndex {
 		return exact ? exactSearch(queries) : partialSearch(queries);
 	}
 	
+	/**
+	 * Do the searching, keeping only the best results
+	 * 
+	 * @param queries to do the search on
+	 * @param exact indicating whether or not to do a exact search
+	 * @param k the maximum number of results to return
+	 * @return a list of at most k search results
+	 */
+	public ArrayList<SearchResult> search(Set<String> queries, boolean exact, int k) {
+		return exact ? exactSearch(queries, k) : partialSearch(queries, k);
+	}
+	
+	/**
+	 * Do the searching for a parsed query. Queries of plain words are scored
+	 * the same way as {@link #search(Set, boolean)}.
+	 * 
+	 * @param query the parsed query to search for
+	 * @param exact indicating whether or not to do a exact search
+	 * @return a list of search results
+	 * 
+	 * @see QueryParser
+	 */
+	public ArrayList<SearchResult> search(Query query, boolean exact) {
+		return search(query, exact, Scorer.DEFAULT);
+	}
+	
+	/**
+	 * Do the searching for a parsed query with the given scorer. A query of
+	 * plain words scores each word on its own, while the clauses of any other
+	 * query are scored together as a single word.
+	 * 
+	 * @param query the parsed query to search for
+	 * @param exact indicating whether or not to do a exact search
+	 * @param scorer the scorer used to rank the results
+	 * @return a list of search results
+	 * 
+	 * @see QueryParser
+	 */
+	public ArrayList<SearchResult> search(Query query, boolean exact, Scorer scorer) {
+		Map<String, Integer> terms = query.getTerms();
+		if (terms != null) {
+			return allResults(matches(terms, exact, scorer), scorer);
+		}
+		return allResults(query.evaluate(this, exact), scorer);
+	}
+	
+	/**
+	 * Do the searching for a parsed query, keeping only the best results
+	 * 
+	 * @param query the parsed query to search for
+	 * @param exact indicating whether or not to do a exact search
+	 * @param k the maximum number of results to return
+	 * @return a list of at most k search results
+	 * 
+	 * @see QueryParser
+	 */
+	public ArrayList<SearchResult> search(Query query, boolean exact, int k) {
+		return search(query, exact, k, Scorer.DEFAULT);
+	}
+	
+	/**
+	 * Do the searching for a parsed query with the given scorer, keeping only
+	 * the best results
+	 * 
+	 * @param query the parsed query to search for
+	 * @param exact indicating whether or not to do a exact search
+	 * @param k the maximum number of results to return
+	 * @param scorer the scorer used to rank the results
+	 * @return a list of at most k search results
+	 * 
+	 * @see QueryParser
+	 */
+	public ArrayList<SearchResult> search(Query query, boolean exact, int k, Scorer scorer) {
+		Map<String, Integer> terms = query.getTerms();
+		if (terms != null) {
+			return topResults(matches(terms, exact, scorer), k, scorer);
+		}
+		return topResults(query.evaluate(this, exact), k, scorer);
+	}
+	
+	/**
+	 * Finds the postings of every word that matches one of the queries, and
+	 * weighs each word with the scorer
+	 * 
+	 * @param queries to do the search on
+	 * @param exact indicating whether or not to do a exact search
+	 * @param scorer the scorer used to weigh each word
+	 * @return the postings to score, one for each match in each part
+	 */
+	private WeightedPostings matches(Set<String> queries, boolean exact, Scorer scorer) {
+		Map<String, Integer> terms = new LinkedHashMap<>();
+		for (String query : queries) {
+			terms.put(query, 0);
+		}
+		return matches(terms, exact, scorer);
+	}
+	
+	/**
+	 * Finds the postings of every word that matches one of the queries, and
+	 * weighs each word with the scorer. Words found within some edits of a
+	 * fuzzy query are boosted by how close they are.
+	 * 
+	 * @param queries to do the search on, with the number of edits allowed for
+	 *        each, which is 0 for a plain word
+	 * @param exact indicating whether or not to do a exact search
+	 * @param scorer the scorer used to weigh each word
+	 * @return the postings to score, one for each match in each part
+	 * 
+	 * @see Query.Fuzzy#boost(int)
+	 */
+	private WeightedPostings matches(Map<String, Integer> queries, boolean exact, Scorer scorer) {
+		ArrayList<Postings> postings = new ArrayList<>();
+		ArrayList<String> words = new ArrayList<>();
+		ArrayList<Integer> distances = new ArrayList<>();
+		for (var query : queries.entrySet()) {
+			if (query.getValue() == 0) {
+				findPostings(query.getKey(), exact, postings, words);
+				while (distances.size() < postings.size()) {
+					distances.add(0);
+				}
+			}
+			else {
+				findPostings(query.getKey(), query.getValue(), postings, words, distances);
+			}
+		}
+
+		int numDocuments = getNumDocuments();
+		double[] weights = new double[postings.size()];
+		double[] boosts = new double[postings.size()];
+		for (int i = 0; i < weights.length; i++) {
+			boosts[i] = Query.Fuzzy.boost(distances.get(i));
+			int frequency = postings.get(i).size();
+			List<InvertedIndex> parts = getParts(words.get(i));
+			if (parts.size() > 1) {
+				frequency = 0;
+				for (InvertedIndex part : parts) {
+					Postings found = part.index.get(words.get(i));
+					frequency += found != null ? found.size() : 0;
+				}
+			}
+			weights[i] = scorer.weight(frequency, numDocuments);
+		}
+		return new WeightedPostings(postings, weights, boosts);
+	}
+	
+	/**
+	 * Finds the postings of the word, or of every word that starts with it, in
+	 * every part of the index. The caller must hold the read lock, if any.
+	 * 
+	 * @param query the word to search for
+	 * @param exact indicating whether only the word itself matches
+	 * @return the postings of each match in each part
+	 */
+	protected List<Postings> findPostings(String query, boolean exact) {
+		ArrayList<Postings> postings = new ArrayList<>();
+		findPostings(query, exact, postings, new ArrayList<>());
+		return postings;
+	}
+	
+	/**
+	 * Finds the postings of the word, or of every word that starts with it, in
+	 * every part of the index.
+	 * 
+	 * @param query the word to search for
+	 * @param exact indicating whether only the word itself matches
+	 * @param postings the list to add the postings of each match in each part to
+	 * @param words the list to add the word of each match to
+	 */
+	private void findPostings(String query, boolean exact, List<Postings> postings, List<String> words) {
+		for (InvertedIndex part : exact ? getParts(query) : getParts()) {
+			if (exact) {
+				Postings found = part.index.get(query);
+				if (found != null) {
+					postings.add(found);
+					words.add(query);
+				}
+			}
+			else {
+				for (var entry : part.index.prefixEntries(query)) {
+					postings.add(entry.getValue());
+					words.add(entry.getKey());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the postings of every word within some edits of the word, in every
+	 * part of the index. The caller must hold the read lock, if any.
+	 * 
+	 * @param query the word to search for
+	 * @param distance the largest number of edits between the word and a match
+	 * @return the postings of each match in each part
+	 * 
+	 * @see TermTrie#forEachWithin(String, int, java.util.function.ObjIntConsumer)
+	 */
+	protected List<Postings> findPostings(String query, int distance) {
+		ArrayList<Postings> postings = new ArrayList<>();
+		findPostings(query, distance, postings, new ArrayList<>(), new ArrayList<>());
+		return postings;
+	}
+	
+	/**
+	 * Finds the postings of every word within some edits of the word, in every
+	 * part of the index.
+	 * 
+	 * @param query the word to search for
+	 * @param distance the largest number of edits between the word and a match
+	 * @param postings the list to add the postings of each match in each part to
+	 * @param words the list to add the word of each match to
+	 * @param distances the list to add the number of edits of each match to
+	 */
+	private void findPostings(String query, int distance, List<Postings> postings, List<String> words, List<Integer> distances) {
+		for (InvertedIndex part : getParts()) {
+			part.index.forEachWithin(query, distance, (entry, edits) -> {
+				postings.add(entry.getValue());
+				words.add(entry.getKey());
+				distances.add(edits);
+			});
+		}
+	}
+	
+	/**
+	 * Scores every location of the matched postings one word at a time
+	 * 
+	 * @param matches the postings to score
+	 * @param scorer the scorer used to rank the results
+	 * @return the sorted search results
+	 */
+	private ArrayList<SearchResult> allResults(WeightedPostings matches, Scorer scorer) {
+		ArrayList<SearchResult> entries = new ArrayList<>();
+		Map<Integer, SearchResult> lookupMap = new HashMap<>();
+		double averageCount = getAverageCount();
+		for (int i = 0; i < matches.size(); i++) {
+			performSearch(entries, matches.postings(i), matches.weight(i), matches.boost(i), scorer, averageCount, lookupMap);
+		}
+		Collections.sort(entries);
+		return entries;
+	}
+	
+	/**
+	 * Scores every document matched by a parsed query
+	 * 
+	 * @param matches the matched documents
+	 * @param scorer the scorer used to rank the results
+	 * @return the sorted search results
+	 */
+	private ArrayList<SearchResult> allResults(Matches matches, Scorer scorer) {
+		ArrayList<SearchResult> entries = new ArrayList<>(matches.size());
+		double weight = scorer.weight(matches.size(), getNumDocuments());
+		double averageCount = getAverageCount();
+		for (int i = 0; i < matches.size(); i++) {
+			entries.add(score(matches.document(i), matches.count(i), weight, scorer, averageCount));
+		}
+		Collections.sort(entries);
+		return entries;
+	}
+	
+	/**
+	 * Scores every document matched by a parsed query, keeping only the best
+	 * results in a bounded heap
+	 * 
+	 * @param matches the matched documents
+	 * @param k the maximum number of results to return
+	 * @param scorer the scorer used to rank the results
+	 * @return the best k results in the same order as {@link #allResults(Matches, Scorer)}
+	 */
+	private ArrayList<SearchResult> topResults(Matches matches, int k, Scorer scorer) {
+		if (k < 0) {
+			throw new IllegalArgumentException("Number of results must not be negative: " + k);
+		}
+		PriorityQueue<SearchResult> heap = new PriorityQueue<>(k + 1, Collections.reverseOrder());
+		double weight = scorer.weight(matches.size(), getNumDocuments());
+		double averageCount = getAverageCount();
+		for (int i = 0; i < matches.size() && k > 0; i++) {
+			offer(heap, score(matches.document(i), matches.count(i), weight, scorer, averageCount), k);
+		}
+		return drain(heap);
+	}
+	
+	/**
+	 * Scores a document matched by a parsed query as if it were a single word
+	 * 
+	 * @param document the document ID
+	 * @param count the number of matches in the document
+	 * @param weight the weight of the query
+	 * @param scorer the scorer used to rank the results
+	 * @param averageCount the average word count of the documents
+	 * @return the scored result
+	 */
+	private SearchResult score(int document, int count, double weight, Scorer scorer, double averageCount) {
+		int totalCount = getCount(document);
+		SearchResult entry = new SearchResult(document);
+		entry.updateValues(count, count, scorer.score(count, weight, totalCount, averageCount), totalCount, scorer);
+		return entry;
+	}
+	
+	/**
+	 * Finds the best results one document at a time using MaxScore pruning.
+	 * Every postings has an upper bound on the score it can add to a document.
+	 * The postings are sorted by that bound, and once the k-th best score is
+	 * higher than the sum of the smallest bounds, those postings can no longer
+	 * make a document reach the top k on their own. Only the remaining postings
+	 * are walked to find candidate documents, and the others are skipped ahead
+	 * to a candidate only while it can still make the cut. Scores are computed
+	 * the same way as {@link #allResults(WeightedPostings, Scorer)}, so the
+	 * results are the first k of it.
+	 * 
+	 * @param matches the postings to score
+	 * @param k the maximum number of results to return
+	 * @param scorer the scorer used to rank the results
+	 * @return the best k results in the same order as
+	 *         {@link #allResults(WeightedPostings, Scorer)}
+	 */
+	private ArrayList<SearchResult> topResults(WeightedPostings matches, int k, Scorer scorer) {
+		if (k < 0) {
+			throw new IllegalArgumentException("Number of results must not be negative: " + k);
+		}
+		if (k == 0) {
+			return new ArrayList<>();
+		}
+
+		int n = matches.size();
+		double averageCount = getAverageCount();
+		Cursor[] cursors = new Cursor[n];
+		for (int i = 0; i < n; i++) {
+			Postings postings = matches.postings(i);
+			double weight = matches.weight(i);
+			double boost = matches.boost(i);
+			cursors[i] = new Cursor(postings, weight, boost, boost * maxScore(postings, weight, scorer, averageCount), i);
+		}
+		Cursor[] ordered = Arrays.copyOf(cursors, n);
+		Arrays.sort(cursors, Comparator.comparingDouble(Cursor::getMaxScore));
+		double[] bounds = new double[n];
+		for (int i = 0; i < n; i++) {
+			bounds[i] = (i > 0 ? bounds[i - 1] : 0) + cursors[i].getMaxScore();
+		}
+
+		PriorityQueue<SearchResult> heap = new PriorityQueue<>(k + 1, Collections.reverseOrder());
+		int[] frequencies = new int[n];
+		int[] found = new int[n];
+		double threshold = Double.NEGATIVE_INFINITY;
+		int essential = 0;
+		candidates:
+		while (true) {
+			while (essential < n && bounds[essential] + EPSILON < threshold) {
+				essential++;
+			}
+			int document = Integer.MAX_VALUE;
+			for (int i = essential; i < n; i++) {
+				if (cursors[i].hasDocument()) {
+					document = Math.min(document, cursors[i].getDocument());
+				}
+			}
+			if (document == Integer.MAX_VALUE) {
+				break;
+			}
+
+			int totalCount = getCount(document);
+			int numFound = 0;
+			double sum = 0;
+			for (int i = essential; i < n; i++) {
+				if (cursors[i].hasDocument() && cursors[i].getDocument() == document) {
+					int frequency = cursors[i].getFrequency();
+					frequencies[cursors[i].getOrder()] = frequency;
+					found[numFound++] = cursors[i].getOrder();
+					sum += cursors[i].getBoost() * scorer.score(frequency, cursors[i].getWeight(), totalCount, averageCount);
+					cursors[i].next();
+				}
+			}
+			for (int i = essential - 1; i >= 0; i--) {
+				if (sum + bounds[i] + EPSILON < threshold) {
+					continue candidates;
+				}
+				if (cursors[i].skipTo(document)) {
+					int frequency = cursors[i].getFrequency();
+					frequencies[cursors[i].getOrder()] = frequency;
+					found[numFound++] = cursors[i].getOrder();
+					sum += cursors[i].getBoost() * scorer.score(frequency, cursors[i].getWeight(), totalCount, averageCount);
+				}
+			}
+
+			// adds the words up in the order of the query, like allResults, so
+			// equal scores are exactly equal on both paths
+			Arrays.sort(found, 0, numFound);
+			SearchResult entry = new SearchResult(document);
+			for (int f = 0; f < numFound; f++) {
+				Cursor cursor = ordered[found[f]];
+				int frequency = frequencies[found[f]];
+				entry.updateValues(frequency, cursor.getBoost() * frequency,
+						cursor.getBoost() * scorer.score(frequency, cursor.getWeight(), totalCount, averageCount), totalCount, scorer);
+			}
+			offer(heap, entry, k);
+			if (heap.size() == k) {
+				threshold = heap.peek().getScore();
+			}
+		}
+		return drain(heap);
+	}
+	
+	/**
+	 * Adds the result to a heap that keeps the best k results with the worst
+	 * one on top, if it is better than the worst one
+	 * 
+	 * @param heap the heap of the best results so far
+	 * @param entry the result to add
+	 * @param k the maximum number of results to keep
+	 */
+	private static void offer(PriorityQueue<SearchResult> heap, SearchResult entry, int k) {
+		if (heap.size() < k) {
+			heap.add(entry);
+		}
+		else if (entry.compareTo(heap.peek()) < 0) {
+			heap.poll();
+			heap.add(entry);
+		}
+	}
+	
+	/**
+	 * Empties a heap of the best results
+	 * 
+	 * @param heap the heap with the worst result on top
+	 * @return the results from best to worst
+	 */
+	private static ArrayList<SearchResult> drain(PriorityQueue<SearchResult> heap) {
+		ArrayList<SearchResult> top = new ArrayList<>(heap.size());
+		while (!heap.isEmpty()) {
+			top.add(heap.poll());
+		}
+		Collections.reverse(top);
+		return top;
+	}
+	
+	/**
+	 * Returns the highest score the postings can add to any of its documents,
+	 * computing it the first time it is needed since the index last changed.
+	 * 
+	 * @param postings the postings to bound
+	 * @param weight the weight of the word of the postings
+	 * @param scorer the scorer used to rank the results
+	 * @param averageCount the average word count of the documents
+	 * @return the largest score of the word over every document in the postings
+	 */
+	private double maxScore(Postings postings, double weight, Scorer scorer, double averageCount) {
+		Map<Scorer, Map<Postings, Double>> bounds = maxScores;
+		if (bounds == null) {
+			bounds = Collections.synchronizedMap(new WeakHashMap<>());
+			maxScores = bounds;
+		}
+		Map<Postings, Double> scores = bounds.computeIfAbsent(scorer, s -> Collections.synchronizedMap(new WeakHashMap<>()));
+		Double cached = scores.get(postings);
+		if (cached == null) {
+			double max = 0;
+			for (int i = 0; i < postings.size(); i++) {
+				int frequency = postings.positions(i).size();
+				max = Math.max(max, scorer.score(frequency, weight, getCount(postings.document(i)), averageCount));
+			}
+			cached = max;
+			scores.put(postings, cached);
+		}
+		return cached;
+	}
+	
+	/**
+	 * Forgets the score bounds of every postings and moves to a new version.
+	 * Must be called whenever the postings or word counts seen by searches of
+	 * this index change.
+	 */
+	protected void indexChanged() {
+		if (maxScores != null) {
+			maxScores = null;
+		}
+		version.incrementAndGet();
+	}
+	
+	/**
+	 * Returns a number that changes whenever words are added to the index, so
+	 * anything worked out from the index can tell when it is out of date.
+	 * 
+	 * @return the version of the index
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+	
+	/**
+	 * Returns the indexes that hold the postings searched by this index. Every
+	 * part must share this index's document table. Results are scored with
+	 * {@link #getCount(int)} of this index.
+	 * 
+	 * @return the parts to search, which is just this index by default
+	 */
+	protected List<InvertedIndex> getParts() {
+		return List.of(this);
+	}
+	
+	/**
+	 * Returns the parts that may hold the postings of the word itself, which
+	 * are every part by default.
+	 * 
+	 * @param word the word to look up
+	 * @return the parts to look the word up in
+	 */
+	protected List<InvertedIndex> getParts(String word) {
+		return getParts();
+	}
+	
+	/**
+	 * @param document the document ID
+	 * @return the number of total word count in the document
+	 */
+	protected int getCount(int document) {
+		int index = document - first;
+		return index >= 0 && index < counts.length ? counts[index] : 0;
+	}
+	
+	/**
+	 * @return the number of documents with at least one word in any part
+	 */
+	protected int getNumDocuments() {
+		int total = 0;
+		for (InvertedIndex part : getParts()) {
+			total += part.numDocuments;
+		}
+		return total;
+	}
+	
+	/**
+	 * @return the average word count of the documents in every part
+	 */
+	protected double getAverageCount() {
+		long total = 0;
+		for (InvertedIndex part : getParts()) {
+			total += part.totalCount;
+		}
+		int documents = getNumDocuments();
+		return documents == 0 ? 0.0 : (double) total / documents;
+	}
+	
 	/**
 	 * Similar algorithm for exact search and partial search
 	 * 
 	 * @param entries to perform the search
-	 * @param word found in the index to perform the search on
+	 * @param postings of the word found in the index to perform the search on
+	 * @param weight the weight of the word
+	 * @param boost the factor the scores of the word are multiplied by
+	 * @param scorer the scorer used to rank the results
+	 * @param averageCount the average word count of the documents
 	 * @param lookupMap map to look up
 	 */
-	private void performSearch(ArrayList<SearchResult> entries, String word, Map<String, SearchResult> lookupMap) {
-		for (String location : getLocations(word)) {
-			SearchResult entry = null;
+	private void performSearch(ArrayList<SearchResult> entries, Postings postings, double weight, double boost, Scorer scorer, double averageCount, Map<Integer, SearchResult> lookupMap) {
+		for (int i = 0; i < postings.size(); i++) {
+			int document = postings.document(i);
+			SearchResult entry = lookupMap.get(document);
 			
-			if (lookupMap.containsKey(location)) {
-				entry = lookupMap.get(location);
-			}
-			else {
-				entry = new SearchResult(location);
+			if (entry == null) {
+				entry = new SearchResult(document);
 				entries.add(entry);
-				lookupMap.put(location, entry);
+				lookupMap.put(document, entry);
 			}
 
-			entry.updateValues(word, location);
+			int frequency = postings.positions(i).size();
+			int totalCount = getCount(document);
+			entry.updateValues(frequency, boost * frequency, boost * scorer.score(frequency, weight, totalCount, averageCount), totalCount, scorer);
 		}
 	}
 
 	@Override
 	public String toString() {
-		return index.toString();
+		StringBuilder builder = new StringBuilder("{");
+		for (var entry : index.entrySet()) {
+			if (builder.length() > 1) {
+				builder.append(", ");
+			}
+			builder.append(entry.getKey()).append("={");
+			Postings postings = entry.getValue();
+			for (int i = 0; i < postings.size(); i++) {
+				if (i > 0) {
+					builder.append(", ");
+				}
+				builder.append(documents.location(postings.document(i))).append('=').append(postings.positions(i));
+			}
+			builder.append('}');
+		}
+		return builder.append('}').toString();
 	}
 	
 	/**
@@ -267,7 +1189,33 @@ public class InvertedIndex {
 	 * @throws IOException if exception occurs
 	 */
 	public void toJsonIndex(Path file) throws IOException {
-		JsonWriter.writeIndexJson(index, file);
+		JsonWriter.writeIndexJson(index, documents, file);
+	}
+	
+	/**
+	 * Write the index into a binary file that can be opened with
+	 * {@link #fromBinary(Path)}
+	 * 
+	 * @param file used to output the index in binary format
+	 * @throws IOException if exception occurs
+	 * 
+	 * @see BinaryIndex
+	 */
+	public void toBinary(Path file) throws IOException {
+		BinaryIndex.write(index, documents, counts, first, file);
+	}
+	
+	/**
+	 * Memory-maps a binary index file and adds its contents to the index. The
+	 * index is left unchanged if the file is not valid.
+	 * 
+	 * @param file the binary index file to open
+	 * @throws IOException if exception occurs or the file is not a valid index
+	 * 
+	 * @see BinaryIndex
+	 */
+	public void fromBinary(Path file) throws IOException {
+		BinaryIndex.read(file, this);
 	}
 	
 	/**
@@ -277,49 +1225,222 @@ public class InvertedIndex {
 	 * @throws IOException if exception occurs
 	 */
 	public void toJsonCount(Path file) throws IOException {
-		JsonWriter.writeCountJson(counts, file);
+		JsonWriter.writeCountJson(getCounts(), file);
 	}
 	
 
+	/**
+	 * The postings matched by a query, each with the weight of its word
+	 */
+	private static class WeightedPostings {
+		/** the matched postings */
+		private final List<Postings> postings;
+		/** the weight of the word of each postings */
+		private final double[] weights;
+		/** the factor the scores of each postings are multiplied by */
+		private final double[] boosts;
+		
+		/**
+		 * Initializes the instance data
+		 * @param postings the matched postings
+		 * @param weights the weight of the word of each postings
+		 * @param boosts the factor the scores of each postings are multiplied by
+		 */
+		public WeightedPostings(List<Postings> postings, double[] weights, double[] boosts) {
+			this.postings = postings;
+			this.weights = weights;
+			this.boosts = boosts;
+		}
+		
+		/**
+		 * @return the number of matched postings
+		 */
+		public int size() {
+			return weights.length;
+		}
+		
+		/**
+		 * @param i the index of the postings
+		 * @return the postings at the index
+		 */
+		public Postings postings(int i) {
+			return postings.get(i);
+		}
+		
+		/**
+		 * @param i the index of the postings
+		 * @return the weight of the word of the postings at the index
+		 */
+		public double weight(int i) {
+			return weights[i];
+		}
+		
+		/**
+		 * @param i the index of the postings
+		 * @return the factor the scores of the postings at the index are multiplied by
+		 */
+		public double boost(int i) {
+			return boosts[i];
+		}
+	}
+	
+	/**
+	 * Walks the documents of one postings in increasing order of document ID
+	 */
+	private static class Cursor {
+		/** the postings to walk */
+		private final Postings postings;
+		/** the weight of the word of the postings */
+		private final double weight;
+		/** the factor the scores of the postings are multiplied by */
+		private final double boost;
+		/** the highest score the postings can add to a document */
+		private final double maxScore;
+		/** the position of the postings among the matches of the query */
+		private final int order;
+		/** the index of the current document in the postings */
+		private int index;
+		
+		/**
+		 * Initializes the instance data
+		 * @param postings the postings to walk
+		 * @param weight the weight of the word of the postings
+		 * @param boost the factor the scores of the postings are multiplied by
+		 * @param maxScore the highest score the postings can add to a document
+		 * @param order the position of the postings among the matches of the query
+		 */
+		public Cursor(Postings postings, double weight, double boost, double maxScore, int order) {
+			this.postings = postings;
+			this.weight = weight;
+			this.boost = boost;
+			this.maxScore = maxScore;
+			this.order = order;
+			this.index = 0;
+		}
+		
+		/**
+		 * @return the position of the postings among the matches of the query
+		 */
+		public int getOrder() {
+			return order;
+		}
+		
+		/**
+		 * @return the weight of the word of the postings
+		 */
+		public double getWeight() {
+			return weight;
+		}
+		
+		/**
+		 * @return the factor the scores of the postings are multiplied by
+		 */
+		public double getBoost() {
+			return boost;
+		}
+		
+		/**
+		 * @return the highest score the postings can add to a document
+		 */
+		public double getMaxScore() {
+			return maxScore;
+		}
+		
+		/**
+		 * @return true if the cursor has not walked past the last document
+		 */
+		public boolean hasDocument() {
+			return index < postings.size();
+		}
+		
+		/**
+		 * @return the ID of the current document
+		 */
+		public int getDocument() {
+			return postings.document(index);
+		}
+		
+		/**
+		 * @return the number of positions in the current document
+		 */
+		public int getFrequency() {
+			return postings.positions(index).size();
+		}
+		
+		/**
+		 * Moves to the next document
+		 */
+		public void next() {
+			index++;
+		}
+		
+		/**
+		 * Moves to the first document with an ID of at least the given one
+		 * @param document the document ID to skip to
+		 * @return true if the cursor is now at the given document
+		 */
+		public boolean skipTo(int document) {
+			index = postings.advance(index, document);
+			return hasDocument() && getDocument() == document;
+		}
+	}
+
 	/**
 	 * Storing the search results
 	 */
 	public class SearchResult implements Comparable<SearchResult> {
-		/** The path that is scored in the SearchResult instance */
-		final protected String path;
+		/** The ID of the document that is scored in the SearchResult instance */
+		final protected int document;
 		/** The count that is scored in the SearchResult instance */
 		protected int count;
 		/** The score that is scored in the SearchResult instance */
 		protected double score;
+		/** The number of matches, each multiplied by the boost of its word */
+		private double boosted;
+		/** The sum of the scores of the matched words */
+		private double sum;
 		
 		/**
 		 * Initializes the instance data
-		 * @param path that the result is storing for
+		 * @param document the ID of the document that the result is storing for
 		 */
-		public SearchResult(String path) {
-			this.path = path;
+		public SearchResult(int document) {
+			this.document = document;
 			count = 0;
 			score = 0.0;
+			boosted = 0.0;
+			sum = 0.0;
 		}
 		
 		/**
 		 * Update the values of count and score
-		 * @param word to be updated
-		 * @param location to be updated
+		 * @param matches the number of times a query word appears in the document
+		 * @param boostedMatches the matches multiplied by the boost of the word,
+		 *        which is the same as the matches unless the word was found by a
+		 *        fuzzy query
+		 * @param wordScore the score of the query word in the document
+		 * @param totalCount the word count of the document
+		 * @param scorer the scorer used to rank the results
 		 */
-		private void updateValues(String word, String location) {
-			this.count += index.get(word).get(path).size();
-
-			int totalCount = counts.get(path);
-			double score = (double) count / totalCount;
-			this.score = score;
+		private void updateValues(int matches, double boostedMatches, double wordScore, int totalCount, Scorer scorer) {
+			this.count += matches;
+			this.boosted += boostedMatches;
+			this.sum += wordScore;
+			this.score = scorer.total(boosted, sum, totalCount);
 		}
 		
 		/**
 		 * @return the path
 		 */
 		public String getPath() {
-			return path;
+			return documents.location(document);
+		}
+		
+		/**
+		 * @return the document ID
+		 */
+		public int getDocument() {
+			return document;
 		}
 		
 		/**
@@ -340,7 +1461,7 @@ public class InvertedIndex {
 		public int compareTo(SearchResult other) {
 			if (Double.compare(this.score, other.score) == 0) {
 				if (Integer.compare(this.count, other.count) == 0) {
-					return String.CASE_INSENSITIVE_ORDER.compare(this.path, other.path);
+					return String.CASE_INSENSITIVE_ORDER.compare(this.getPath(), other.getPath());
 				}
 				return Integer.compare(other.count, this.count);
 			}
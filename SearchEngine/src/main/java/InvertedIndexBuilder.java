@@ -4,7 +4,6 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Build the given inverted index
@@ -31,9 +30,19 @@ public class InvertedIndexBuilder {
 	 * @throws IOException if an IO error occurs
 	 */
 	public void build(Path startPath) throws IOException {
-		for (Path path : DirectoryTraverser.traverse(startPath)) {
-			addFile(path);
-		}
+		build(startPath, new DirectoryTraverser());
+	}
+	
+	/**
+	 * Build from the startPath, adding each file as soon as the traverser finds
+	 * it
+	 * 
+	 * @param startPath used to build the index
+	 * @param traverser the traverser that finds the files to add
+	 * @throws IOException if an IO error occurs
+	 */
+	public void build(Path startPath, DirectoryTraverser traverser) throws IOException {
+		traverser.traverse(startPath, this::addFile);
 	}
 	
 	/**
@@ -54,16 +63,19 @@ public class InvertedIndexBuilder {
 	 * @throws IOException if an IO error occurs
 	 */
 	public static void addFile(Path path, InvertedIndex index) throws IOException {
-		String file = path.toString();
-		Stemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		int document = index.getDocuments().add(path.toString());
+		Stemmer stemmer = TextStemmer.getStemmer();
+		SurfaceForms surfaces = index.getSurfaceForms();
 		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
 			String line = null;
-			int n = 0;
+			int[] n = {0};
+			StringBuilder buffer = new StringBuilder();
 			while ((line = reader.readLine()) != null) {
-				for (String word : TextParser.parse(line)) {
-					index.add(file, stemmer.stem(word).toString(), n);
-					n++;
-				}
+				TextParser.parse(line, buffer, word -> {
+					String stem = stemmer.stem(word).toString();
+					surfaces.add(stem, word);
+					index.add(document, stem, n[0]++);
+				});
 			}
 		}
 	}
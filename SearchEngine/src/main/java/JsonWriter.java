@@ -19,11 +19,12 @@ public class JsonWriter
 	 * Writes the elements of index in JSON format.
 	 *
 	 * @param elements the elements to write
+	 * @param documents the table used to look up the location of each document
 	 * @param writer the writer to use
 	 * @param level the initial indent level
 	 * @throws IOException if an IO error occurs
 	 */
-	public static void writeIndexJson(Map<String, Map<String, Set<Integer>>> elements, Writer writer, int level) throws IOException {
+	public static void writeIndexJson(Map<String, Postings> elements, DocumentTable documents, Writer writer, int level) throws IOException {
 		Iterator<String> iterate = elements.keySet().iterator();
 		writer.write("{");
 		if (iterate.hasNext()) {
@@ -31,16 +32,16 @@ public class JsonWriter
 			String key = iterate.next();
 			indent(key, writer, level + 1);
 			writer.write(": ");
-			Map<String, Set<Integer>> values = elements.get(key);
-			asNestedCollection(values, writer, level + 1);
+			Map<String, PositionList> values = asLocations(elements.get(key), documents);
+			asNestedPositions(values, writer, level + 1);
 		}
 		while (iterate.hasNext()) {
 			writer.write(",\n");
 			String key = iterate.next();
 			indent(key, writer, level + 1);
 			writer.write(": ");
-			Map<String, Set<Integer>> values = elements.get(key);
-			asNestedCollection(values, writer, level + 1);
+			Map<String, PositionList> values = asLocations(elements.get(key), documents);
+			asNestedPositions(values, writer, level + 1);
 		}
 		writer.write("\n}");
 	}
@@ -219,6 +220,79 @@ public class JsonWriter
 		writer.write("}");
 	}
 
+	/**
+	 * Looks up the location of every document in the postings.
+	 *
+	 * @param postings the postings to convert
+	 * @param documents the table used to look up the location of each document
+	 * @return a map from each location to its positions, sorted by location
+	 */
+	private static Map<String, PositionList> asLocations(Postings postings, DocumentTable documents) {
+		Map<String, PositionList> locations = new TreeMap<>();
+		for (int i = 0; i < postings.size(); i++) {
+			locations.put(documents.location(postings.document(i)), postings.positions(i));
+		}
+		return locations;
+	}
+
+	/**
+	 * Writes the positions as a pretty JSON array without boxing each position.
+	 *
+	 * @param elements the positions to write
+	 * @param writer the writer to use
+	 * @param level the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asPositions(PositionList elements, Writer writer, int level) throws IOException {
+		PrimitiveIterator.OfInt iterate = elements.iterator();
+		writer.write("[");
+		if (iterate.hasNext()) {
+			writer.write("\n");
+			indent(writer, level + 1);
+			writer.write(Integer.toString(iterate.nextInt()));
+		}
+		while (iterate.hasNext()) {
+			writer.write(",\n");
+			indent(writer, level + 1);
+			writer.write(Integer.toString(iterate.nextInt()));
+		}
+		writer.write("\n");
+		indent(writer, level);
+		writer.write("]");
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with a nested array of
+	 * positions.
+	 *
+	 * @param elements the elements to write
+	 * @param writer the writer to use
+	 * @param level the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asNestedPositions(Map<String, PositionList> elements, Writer writer, int level) throws IOException {
+		Iterator <String> iterate = elements.keySet().iterator();
+		writer.write("{");
+		if (iterate.hasNext()) {
+			writer.write("\n");
+			String key = iterate.next();
+			indent(key, writer, level + 1);
+			writer.write(": ");
+			asPositions(elements.get(key), writer, level + 1);
+		}
+		
+		while (iterate.hasNext()) {
+			writer.write(",\n");
+			String key = iterate.next();
+			indent(key, writer, level + 1);
+			writer.write(": ");
+			asPositions(elements.get(key), writer, level + 1);
+		}
+		writer.write("\n");
+		indent(writer, level);
+		writer.write("}");
+	}
+
 	/**
 	 * Indents using a tab character by the number of times specified.
 	 *
@@ -246,7 +320,7 @@ public class JsonWriter
 	public static void indent(String element, Writer writer, int times) throws IOException {
 		indent(writer, times);
 		writer.write('"');
-		writer.write(element);
+		writer.write(element.replace("\\", "\\\\").replace("\"", "\\\""));
 		writer.write('"');
 	}
 
@@ -269,12 +343,13 @@ public class JsonWriter
 	 * Writes the elements of index in JSON format to file.
 	 *
 	 * @param elements the elements to write
+	 * @param documents the table used to look up the location of each document
 	 * @param path the file path to use
 	 * @throws IOException if an IO error occurs
 	 */
-	public static void writeIndexJson(Map<String, Map<String, Set<Integer>>> elements, Path path) throws IOException {
+	public static void writeIndexJson(Map<String, Postings> elements, DocumentTable documents, Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			writeIndexJson(elements, writer, 0);
+			writeIndexJson(elements, documents, writer, 0);
 		}
 	}
 
@@ -282,12 +357,13 @@ public class JsonWriter
 	 * Returns the elements of index in JSON format.
 	 *
 	 * @param elements the elements to use
+	 * @param documents the table used to look up the location of each document
 	 * @return a {@link String} containing the elements in pretty JSON format
 	 */
-	public static String writeIndexJson(Map<String, Map<String, Set<Integer>>> elements) {
+	public static String writeIndexJson(Map<String, Postings> elements, DocumentTable documents) {
 		try {
 			StringWriter writer = new StringWriter();
-			writeIndexJson(elements, writer, 0);
+			writeIndexJson(elements, documents, writer, 0);
 			return writer.toString();
 		}
 		catch (IOException e) {
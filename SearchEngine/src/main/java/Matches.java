@@ -0,0 +1,188 @@
+import java.util.Arrays;
+
+/**
+ * Stores the documents matched by a query, as document IDs in increasing order
+ * together with the number of times the query matched each document. The
+ * count plays the same role as the number of positions of a single word, and
+ * is used to score the document.
+ *
+ * @author tiffanyz
+ *
+ * @see Query
+ */
+public class Matches {
+	/** The capacity of a new list of matches */
+	private static final int INITIAL_CAPACITY = 4;
+	/** The document IDs in increasing order */
+	private int[] documents;
+	/** The number of matches in each document, parallel to {@link #documents} */
+	private int[] counts;
+	/** The number of documents stored */
+	private int size;
+
+	/**
+	 * Constructor: creates an empty list of matches
+	 */
+	public Matches() {
+		this.documents = new int[INITIAL_CAPACITY];
+		this.counts = new int[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Creates the matches of a single word, counting every position of the word
+	 * in a document as one match.
+	 *
+	 * @param postings the postings of the word
+	 * @return the documents of the postings with their number of positions
+	 */
+	public static Matches of(Postings postings) {
+		Matches matches = new Matches();
+		for (int i = 0; i < postings.size(); i++) {
+			matches.add(postings.document(i), postings.positions(i).size());
+		}
+		return matches;
+	}
+
+	/**
+	 * Adds a document after every document already in the list.
+	 *
+	 * @param document the document ID, which must be larger than the last one
+	 * @param count the number of matches in the document
+	 */
+	public void add(int document, int count) {
+		if (size > 0 && documents[size - 1] >= document) {
+			throw new IllegalArgumentException("Documents must be added in increasing order: " + document);
+		}
+		if (size == documents.length) {
+			int capacity = documents.length * 2;
+			documents = Arrays.copyOf(documents, capacity);
+			counts = Arrays.copyOf(counts, capacity);
+		}
+		documents[size] = document;
+		counts[size] = count;
+		size++;
+	}
+
+	/**
+	 * Returns the documents matched by either list. Documents in both lists get
+	 * the sum of their counts, the same way a document matched by several words
+	 * of a query does.
+	 *
+	 * @param other the matches to combine with
+	 * @return a new list with the documents of both lists
+	 */
+	public Matches or(Matches other) {
+		Matches union = new Matches();
+		int i = 0, j = 0;
+		while (i < size && j < other.size) {
+			if (documents[i] < other.documents[j]) {
+				union.add(documents[i], counts[i]);
+				i++;
+			}
+			else if (documents[i] > other.documents[j]) {
+				union.add(other.documents[j], other.counts[j]);
+				j++;
+			}
+			else {
+				union.add(documents[i], counts[i] + other.counts[j]);
+				i++;
+				j++;
+			}
+		}
+		for (; i < size; i++) {
+			union.add(documents[i], counts[i]);
+		}
+		for (; j < other.size; j++) {
+			union.add(other.documents[j], other.counts[j]);
+		}
+		return union;
+	}
+
+	/**
+	 * Returns the documents matched by both lists, with the sum of their counts.
+	 * The shorter list is walked and the longer one skips ahead to each of its
+	 * documents.
+	 *
+	 * @param other the matches to intersect with
+	 * @return a new list with the documents in both lists
+	 */
+	public Matches and(Matches other) {
+		Matches shorter = size <= other.size ? this : other;
+		Matches longer = shorter == this ? other : this;
+		Matches intersection = new Matches();
+		int at = 0;
+		for (int i = 0; i < shorter.size && at < longer.size; i++) {
+			at = longer.advance(at, shorter.documents[i]);
+			if (at < longer.size && longer.documents[at] == shorter.documents[i]) {
+				intersection.add(shorter.documents[i], shorter.counts[i] + longer.counts[at]);
+			}
+		}
+		return intersection;
+	}
+
+	/**
+	 * Returns the documents of this list that are not matched by the other
+	 * list, keeping their counts.
+	 *
+	 * @param other the matches to remove
+	 * @return a new list with the documents only in this list
+	 */
+	public Matches andNot(Matches other) {
+		Matches difference = new Matches();
+		int at = 0;
+		for (int i = 0; i < size; i++) {
+			at = other.advance(at, documents[i]);
+			if (at == other.size || other.documents[at] != documents[i]) {
+				difference.add(documents[i], counts[i]);
+			}
+		}
+		return difference;
+	}
+
+	/**
+	 * Finds the first document at or after the given index whose ID is at least
+	 * the given document ID.
+	 *
+	 * @param from the index to start from
+	 * @param document the document ID to skip to
+	 * @return the index of the first document with an ID of at least the given
+	 *         one, or the size of the list if there is none
+	 *
+	 * @see Postings#advance(int, int)
+	 */
+	public int advance(int from, int document) {
+		int low = from;
+		int step = 1;
+		while (low + step < size && documents[low + step] < document) {
+			low += step;
+			step *= 2;
+		}
+		int high = Math.min(size, low + step + 1);
+		int found = Arrays.binarySearch(documents, low, high, document);
+		return found >= 0 ? found : -(found + 1);
+	}
+
+	/**
+	 * @return the number of documents matched
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i the index in the matches
+	 * @return the document ID at the given index
+	 */
+	public int document(int i) {
+		return documents[i];
+	}
+
+	/**
+	 * @param i the index in the matches
+	 * @return the number of matches in the document at the given index
+	 */
+	public int count(int i) {
+		return counts[i];
+	}
+}
@@ -1,20 +1,48 @@
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import opennlp.tools.stemmer.Stemmer;
 
 /**
  * Build the given inverted index using multiple threads
  * 
+ * Files larger than the chunk size are memory-mapped and split into chunks
+ * that are parsed in parallel, so one large file does not keep a single thread
+ * busy while the others wait. Each chunk is indexed with positions counted
+ * from the start of the chunk, and once every chunk of the file is parsed the
+ * chunks are joined, moving the positions of each chunk up by the number of
+ * words in the chunks before it. A
+ * chunk only ends at an ASCII whitespace character between two ASCII letters,
+ * which never changes how the text around it is split into words, so the
+ * positions are the same as when the file is read line by line.
+ * 
  * @author tiffanyz
  */
 public class MultiInvertedIndexBuilder extends InvertedIndexBuilder {
 	/** Logger to use for this class. */
 	private static final Logger log = LogManager.getRootLogger();
+	/** The size in bytes above which files are split into chunks by default */
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+	/** The smallest size in bytes a file is split at */
+	public static final int MIN_CHUNK_SIZE = 4 << 10;
+	/** The number of bytes read at a time while looking for the end of a chunk */
+	private static final int SCAN_SIZE = 64 << 10;
+	
 	/** inverted index to store the result */
 	private final SafeInvertedIndex index;
 	/** the work queue to do the tasks */
 	private final WorkQueue queue;
+	/** the size in bytes above which files are split into chunks */
+	private final int chunkSize;
 	
 	/**
 	 * Initializes the instance data
@@ -23,22 +51,136 @@ public class MultiInvertedIndexBuilder extends InvertedIndexBuilder {
 	 * @param queue the work queue to use
 	 */
 	public MultiInvertedIndexBuilder(SafeInvertedIndex index, WorkQueue queue) {
+		this(index, queue, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Initializes the instance data
+	 * 
+	 * @param index the thread safe inverted index to build on
+	 * @param queue the work queue to use
+	 * @param chunkSize the size in bytes above which files are split into
+	 *        chunks parsed in parallel
+	 */
+	public MultiInvertedIndexBuilder(SafeInvertedIndex index, WorkQueue queue, int chunkSize) {
 		super(index);
+		if (chunkSize < MIN_CHUNK_SIZE) {
+			throw new IllegalArgumentException("Chunk size must be at least " + MIN_CHUNK_SIZE + ": " + chunkSize);
+		}
 		this.index = index;
 		this.queue = queue;
+		this.chunkSize = chunkSize;
 	}
 	
+	/**
+	 * Queues each file as soon as the traverser finds it, so files are parsed
+	 * while the rest of the tree is listed, and waits for every file to be
+	 * added, even if the traversal fails part of the way.
+	 */
 	@Override
-	public void build(Path startPath) throws IOException {
-		super.build(startPath);
-		queue.finish();
+	public void build(Path startPath, DirectoryTraverser traverser) throws IOException {
+		try {
+			super.build(startPath, traverser);
+		}
+		finally {
+			queue.finish();
+		}
 	}
 	
 	@Override
 	public void addFile(Path path) {
+		try {
+			if (Files.size(path) > chunkSize) {
+				new ChunkedFile(path).start();
+				return;
+			}
+		}
+		catch (IOException e) {
+			log.error("Unable to split {} into chunks. ", path);
+		}
 		queue.execute(new Task(path));
 	}
 	
+	/**
+	 * Finds where the chunk that reaches the given offset ends, which is just
+	 * after the first ASCII whitespace character between two ASCII letters at
+	 * or after the offset.
+	 * 
+	 * @param channel the file to look in
+	 * @param from the offset the chunk reaches
+	 * @param size the size of the file
+	 * @return the offset the next chunk starts at, or the size of the file if
+	 *         there is no place to end the chunk
+	 * @throws IOException if an IO error occurs
+	 */
+	private static long findBoundary(FileChannel channel, long from, long size) throws IOException {
+		ByteBuffer window = ByteBuffer.allocate(SCAN_SIZE);
+		long position = from - 1;
+		while (position + 2 < size) {
+			window.clear();
+			while (window.hasRemaining() && channel.read(window, position + window.position()) > 0) {
+				continue;
+			}
+			int length = window.position();
+			for (int i = 1; i + 1 < length; i++) {
+				if (isSpace(window.get(i)) && isLetter(window.get(i - 1)) && isLetter(window.get(i + 1))) {
+					return position + i + 1;
+				}
+			}
+			position += Math.max(1, length - 2);
+		}
+		return size;
+	}
+	
+	/**
+	 * @param b the byte to check
+	 * @return true if the byte is an ASCII letter
+	 */
+	private static boolean isLetter(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+	
+	/**
+	 * @param b the byte to check
+	 * @return true if the byte is an ASCII whitespace character that
+	 *         {@link TextParser} splits words on
+	 */
+	private static boolean isSpace(byte b) {
+		return b == ' ' || (b >= '\t' && b <= '\r');
+	}
+	
+	/**
+	 * Parses and stems the text line by line like {@link java.io.BufferedReader#readLine()}
+	 * splits it, adding every word to the index.
+	 * 
+	 * @param text the text to add
+	 * @param document the ID of the document the text is from
+	 * @param index the index to add the words to
+	 * @return the number of words added
+	 */
+	private static int addText(String text, int document, InvertedIndex index) {
+		Stemmer stemmer = TextStemmer.getStemmer();
+		SurfaceForms surfaces = index.getSurfaceForms();
+		StringBuilder buffer = new StringBuilder();
+		int[] n = {0};
+		int start = 0;
+		for (int i = 0; i <= text.length(); i++) {
+			char c = i < text.length() ? text.charAt(i) : '\n';
+			if (c == '\n' || c == '\r') {
+				TextParser.parse(text.substring(start, i), buffer, word -> {
+					String stem = stemmer.stem(word).toString();
+					surfaces.add(stem, word);
+					index.add(document, stem, n[0]++);
+				});
+				if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+					i++;
+				}
+				start = i + 1;
+			}
+		}
+		return n[0];
+	}
+	
 	/**
 	 * Update the shared index
 	 */
@@ -58,7 +200,7 @@ public class MultiInvertedIndexBuilder extends InvertedIndexBuilder {
 
 		@Override
 		public void run() {
-			InvertedIndex local = new InvertedIndex();
+			InvertedIndex local = new InvertedIndex(index.getDocuments());
 			try {
 				InvertedIndexBuilder.addFile(file, local);
 			} catch (IOException e) {
@@ -68,4 +210,132 @@ public class MultiInvertedIndexBuilder extends InvertedIndexBuilder {
 			index.addAll(local);
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * A large file split into chunks, which joins each chunk to the ones before
+	 * it as soon as they are all parsed
+	 */
+	private class ChunkedFile {
+		/** the file split into chunks */
+		private final Path file;
+		/** the ID of the file in the document table */
+		private final int document;
+		/** the offsets the chunks start at, followed by the size of the file */
+		private final long[] bounds;
+		/** the words of each chunk parsed but not joined yet, with positions counted from its start */
+		private final InvertedIndex[] chunks;
+		/** the number of words in each chunk, or -1 if it could not be parsed */
+		private final int[] words;
+		/** the number of chunks not parsed yet */
+		private final AtomicInteger remaining;
+		/** the chunks joined so far, guarded by this object */
+		private InvertedIndex joined;
+		/** the number of chunks joined so far, guarded by this object */
+		private int next;
+		/** the number of words in the chunks joined so far, guarded by this object */
+		private int offset;
+		
+		/**
+		 * Initializes the instance data
+		 * 
+		 * @param file the file to split into chunks
+		 * @throws IOException if an IO error occurs
+		 */
+		public ChunkedFile(Path file) throws IOException {
+			this.file = file;
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = channel.size();
+				long[] found = new long[(int) (size / chunkSize) + 2];
+				int count = 0;
+				long start = 0;
+				while (start < size) {
+					found[count++] = start;
+					start = start + chunkSize >= size ? size : findBoundary(channel, start + chunkSize, size);
+				}
+				found[count] = size;
+				this.bounds = Arrays.copyOf(found, count + 1);
+			}
+			this.document = index.getDocuments().add(file.toString());
+			this.chunks = new InvertedIndex[bounds.length - 1];
+			this.words = new int[chunks.length];
+			Arrays.fill(this.words, -1);
+			this.remaining = new AtomicInteger(chunks.length);
+			this.joined = new InvertedIndex(index.getDocuments());
+			this.next = 0;
+			this.offset = 0;
+			log.debug("{} split into {} chunks.", file, chunks.length);
+		}
+		
+		/**
+		 * Queues a task to parse every chunk
+		 */
+		public void start() {
+			for (int i = 0; i < chunks.length; i++) {
+				int chunk = i;
+				queue.execute(() -> parse(chunk));
+			}
+		}
+		
+		/**
+		 * Maps the chunk into memory, parses it and joins it if the chunks
+		 * before it are joined. The last chunk to finish, even if it fails,
+		 * adds the joined chunks to the shared index.
+		 * 
+		 * @param chunk the number of the chunk to parse
+		 */
+		private void parse(int chunk) {
+			try {
+				InvertedIndex local = new InvertedIndex(index.getDocuments());
+				try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+					MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, bounds[chunk], bounds[chunk + 1] - bounds[chunk]);
+					int count = addText(StandardCharsets.UTF_8.newDecoder().decode(bytes).toString(), document, local);
+					synchronized (this) {
+						chunks[chunk] = local;
+						words[chunk] = count;
+						join();
+					}
+				}
+				catch (IOException e) {
+					log.error("Unable to parse chunk {} of {}. ", chunk, file);
+				}
+			}
+			finally {
+				if (remaining.decrementAndGet() == 0) {
+					InvertedIndex done;
+					synchronized (this) {
+						done = joined;
+						joined = null;
+					}
+					index.addAll(done);
+				}
+			}
+		}
+		
+		/**
+		 * Joins the parsed chunks that directly follow the chunks joined so far,
+		 * moving the positions of each chunk up by the number of words in the
+		 * chunks before it. The positions are moved in place, as a chunk's lists
+		 * are not shared. Once a chunk could not be parsed, no later chunk is
+		 * joined. The caller must hold this object's lock.
+		 */
+		private void join() {
+			while (next < chunks.length && chunks[next] != null) {
+				InvertedIndex chunk = chunks[next];
+				if (next == 0) {
+					joined = chunk;
+				}
+				else {
+					for (var entry : chunk.getEntries()) {
+						PositionList positions = entry.getValue().get(document);
+						positions.shift(offset);
+						joined.add(document, entry.getKey(), positions);
+					}
+					joined.getSurfaceForms().addAll(chunk.getSurfaceForms());
+				}
+				offset += words[next];
+				chunks[next] = null;
+				next++;
+			}
+		}
+	}
+}
@@ -3,7 +3,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -22,6 +21,8 @@ public class MultiResultBuilder implements ResultBuilderInterface {
 	final private Map<String, ArrayList<InvertedIndex.SearchResult>> result;
 	/** the work queue to do the tasks */
 	final private WorkQueue queue;
+	/** the scorer used to rank the results */
+	final private Scorer scorer;
 
 	/**
 	 * Initializes the instance data
@@ -30,9 +31,21 @@ public class MultiResultBuilder implements ResultBuilderInterface {
 	 * @param queue the work queue to use
 	 */
 	public MultiResultBuilder(SafeInvertedIndex index, WorkQueue queue) {
+		this(index, queue, Scorer.DEFAULT);
+	}
+
+	/**
+	 * Initializes the instance data
+	 *  
+	 * @param index the thread safe inverted index to use to build the result
+	 * @param queue the work queue to use
+	 * @param scorer the scorer used to rank the results
+	 */
+	public MultiResultBuilder(SafeInvertedIndex index, WorkQueue queue, Scorer scorer) {
 		this.index = index;
 		this.result = new TreeMap<String, ArrayList<InvertedIndex.SearchResult>>();
 		this.queue = queue;
+		this.scorer = scorer;
 	}
 	
 	@Override
@@ -77,16 +90,16 @@ public class MultiResultBuilder implements ResultBuilderInterface {
 
 		@Override
 		public void run() {
-			TreeSet<String> stems = TextStemmer.uniqueStems(line);
-			String joined = String.join(" ", stems);
+			Query query = QueryParser.parse(line);
+			String joined = query.toString();
 			
-			if (!stems.isEmpty()) {
+			if (!query.isEmpty()) {
 				synchronized (result) {
 					if (result.containsKey(joined)) {
 						return;
 					}
 				}
-				ArrayList<InvertedIndex.SearchResult> entries = index.search(stems, exact);
+				ArrayList<InvertedIndex.SearchResult> entries = index.search(query, exact, scorer);
 				synchronized (result) {
 					result.put(joined, entries);
 				}
@@ -0,0 +1,443 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * Build the given inverted index in a pipeline of stages, each with its own
+ * threads: reading the files, splitting their lines into words, stemming the
+ * words, and adding them to the index. The stages pass files to each other
+ * through queues bounded by the total size of the files waiting in them, so a
+ * stage that falls behind makes the stages before it wait instead of filling
+ * up memory, however large the files are, and disk reads never compete with
+ * stemming for the same threads. A file larger than the bound is let into an
+ * empty queue on its own.
+ *
+ * Every stage counts the files it handled and the time its threads spent
+ * working, and samples how full its queue is whenever a file is added to it.
+ * The stage that is busy the most of the time, with its queue full the most,
+ * is the one that limits the pipeline.
+ *
+ * @author tiffanyz
+ */
+public class PipelinedInvertedIndexBuilder extends InvertedIndexBuilder {
+	/** Logger to use for this class. */
+	private static final Logger log = LogManager.getRootLogger();
+	/** The total size in bytes of the files each queue holds by default */
+	public static final long DEFAULT_QUEUE_BYTES = 16 << 20;
+	/** The names of the stages, in order */
+	public static final List<String> STAGES = List.of("read", "tokenize", "stem", "invert");
+	/** Marks the end of the files, passed once to every thread of a stage */
+	private static final Item END = new Item(null, -1, 0);
+
+	/** inverted index to store the result */
+	private final SafeInvertedIndex index;
+	/** the stages of the pipeline, in order */
+	private final List<Stage> stages;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param index the thread safe inverted index to build on
+	 * @param threads the number of threads of each stage, in the order of
+	 *        {@link #STAGES}
+	 */
+	public PipelinedInvertedIndexBuilder(SafeInvertedIndex index, int[] threads) {
+		this(index, threads, DEFAULT_QUEUE_BYTES);
+	}
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param index the thread safe inverted index to build on
+	 * @param threads the number of threads of each stage, in the order of
+	 *        {@link #STAGES}
+	 * @param queueBytes the total size in bytes of the files the queue of each
+	 *        stage holds
+	 */
+	public PipelinedInvertedIndexBuilder(SafeInvertedIndex index, int[] threads, long queueBytes) {
+		super(index);
+		if (threads.length != STAGES.size() || queueBytes < 1) {
+			throw new IllegalArgumentException("There must be " + STAGES.size() + " stages and a queue size of at least 1 byte. ");
+		}
+		this.index = index;
+		this.stages = new ArrayList<>();
+		List<UnaryOperator<Item>> work = List.of(this::read, this::tokenize, this::stem, this::invert);
+		for (int i = 0; i < STAGES.size(); i++) {
+			if (threads[i] < 1) {
+				throw new IllegalArgumentException("Every stage needs at least one thread: " + threads[i]);
+			}
+			stages.add(new Stage(STAGES.get(i), threads[i], queueBytes, work.get(i)));
+		}
+	}
+
+	/**
+	 * Starts the threads of every stage, passes each file to the first stage as
+	 * soon as the traverser finds it, and waits for every stage to finish. The
+	 * traversal waits while the first queue is full.
+	 */
+	@Override
+	public void build(Path startPath, DirectoryTraverser traverser) throws IOException {
+		for (Stage stage : stages) {
+			stage.start();
+		}
+		try {
+			traverser.traverse(startPath, this::addFile);
+		}
+		finally {
+			for (Stage stage : stages) {
+				stage.finish();
+			}
+		}
+	}
+
+	/**
+	 * Passes the file to the first stage, waiting while its queue is full. The
+	 * file is only added once {@link #build(Path, DirectoryTraverser)} starts
+	 * the stages. A file whose size cannot be found counts as one byte, and
+	 * the read stage reports the error.
+	 */
+	@Override
+	public void addFile(Path path) throws IOException {
+		long size = 1;
+		try {
+			size = Math.max(1, Files.size(path));
+		}
+		catch (IOException e) {
+			log.debug("Unable to find the size of {}. ", path);
+		}
+		try {
+			stages.get(0).put(new Item(path, index.getDocuments().add(path.toString()), size));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while adding " + path);
+		}
+	}
+
+	/**
+	 * Reads the lines of the file.
+	 *
+	 * @param item the file to read
+	 * @return the file with its lines, or null if it could not be read
+	 */
+	private Item read(Item item) {
+		try (BufferedReader reader = Files.newBufferedReader(item.path, StandardCharsets.UTF_8)) {
+			List<String> lines = new ArrayList<>();
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+			item.lines = lines;
+			return item;
+		}
+		catch (IOException e) {
+			log.error("Unable to read {}. ", item.path);
+			return null;
+		}
+	}
+
+	/**
+	 * Splits the lines of the file into clean words.
+	 *
+	 * @param item the file with its lines
+	 * @return the file with its words
+	 */
+	private Item tokenize(Item item) {
+		List<String> words = new ArrayList<>();
+		StringBuilder buffer = new StringBuilder();
+		for (String line : item.lines) {
+			TextParser.parse(line, buffer, word -> words.add(word.toString()));
+		}
+		item.lines = null;
+		item.words = words;
+		return item;
+	}
+
+	/**
+	 * Stems every word of the file.
+	 *
+	 * @param item the file with its words
+	 * @return the file with its words and their stems
+	 */
+	private Item stem(Item item) {
+		Stemmer stemmer = TextStemmer.getStemmer();
+		List<String> stems = new ArrayList<>(item.words.size());
+		for (String word : item.words) {
+			stems.add(stemmer.stem(word).toString());
+		}
+		item.stems = stems;
+		return item;
+	}
+
+	/**
+	 * Builds an index of the file's stems and adds it to the shared index.
+	 *
+	 * @param item the file with its stems
+	 * @return null, as this is the last stage
+	 */
+	private Item invert(Item item) {
+		InvertedIndex local = new InvertedIndex(index.getDocuments());
+		for (int i = 0; i < item.stems.size(); i++) {
+			local.getSurfaceForms().add(item.stems.get(i), item.words.get(i));
+			local.add(item.document, item.stems.get(i), i);
+		}
+		index.addAll(local);
+		return null;
+	}
+
+	/**
+	 * @return the number of files handled, the throughput, how busy the threads
+	 *         were and how full the queue was for every stage
+	 */
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		for (Stage stage : stages) {
+			report.append(String.format("%n  %s", stage));
+		}
+		return report.toString();
+	}
+
+	/**
+	 * A file on its way through the pipeline
+	 */
+	private static class Item {
+		/** the file */
+		private final Path path;
+		/** the ID of the file in the document table */
+		private final int document;
+		/** the size of the file in bytes, which is what it counts for in a queue */
+		private final long size;
+		/** the lines of the file, once read */
+		private List<String> lines;
+		/** the words of the file, once split */
+		private List<String> words;
+		/** the stems of the words, once stemmed */
+		private List<String> stems;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param path the file
+		 * @param document the ID of the file in the document table
+		 * @param size the size of the file in bytes
+		 */
+		public Item(Path path, int document, long size) {
+			this.path = path;
+			this.document = document;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * A stage of the pipeline, with its own queue of files and its own threads.
+	 * The queue itself is unbounded, and the size of the files in it is bounded
+	 * by waiting on this object before adding a file. The end of the files is
+	 * added without waiting, so finishing never blocks on a full queue.
+	 */
+	private class Stage {
+		/** the name of the stage */
+		private final String name;
+		/** the files waiting for this stage */
+		private final BlockingQueue<Item> queue;
+		/** the total size in bytes of the files the queue holds */
+		private final long capacity;
+		/** the total size in bytes of the files in the queue, guarded by this object */
+		private long queued;
+		/** the number of threads still taking files, guarded by this object */
+		private int live;
+		/** the number of threads of the stage */
+		private final int threads;
+		/** the work done on each file, which returns the file for the next stage or null */
+		private final UnaryOperator<Item> work;
+		/** the threads running, while the pipeline is building */
+		private final List<Thread> workers;
+		/** the number of files handled */
+		private final LongAdder handled;
+		/** the time the threads spent working, in nanoseconds */
+		private final LongAdder busy;
+		/** the time the stage was running, in nanoseconds */
+		private final LongAdder running;
+		/** the sum of the queued bytes seen when adding files */
+		private final LongAdder occupancy;
+		/** the number of files added to the queue */
+		private final LongAdder added;
+		/** the most bytes seen queued */
+		private final AtomicLong peak;
+		/** when the stage was last started, in nanoseconds */
+		private long started;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param name the name of the stage
+		 * @param threads the number of threads of the stage
+		 * @param capacity the total size in bytes of the files the queue holds
+		 * @param work the work done on each file
+		 */
+		public Stage(String name, int threads, long capacity, UnaryOperator<Item> work) {
+			this.name = name;
+			this.queue = new LinkedBlockingQueue<>();
+			this.capacity = capacity;
+			this.queued = 0;
+			this.live = 0;
+			this.threads = threads;
+			this.work = work;
+			this.workers = new ArrayList<>();
+			this.handled = new LongAdder();
+			this.busy = new LongAdder();
+			this.running = new LongAdder();
+			this.occupancy = new LongAdder();
+			this.added = new LongAdder();
+			this.peak = new AtomicLong();
+		}
+
+		/**
+		 * Adds a file to the queue, waiting while the file does not fit. A file
+		 * always fits into an empty queue, and into the queue of a stage whose
+		 * threads have all stopped, so no stage waits for a queue that will
+		 * never be emptied.
+		 *
+		 * @param item the file to add
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		public void put(Item item) throws InterruptedException {
+			long size;
+			synchronized (this) {
+				while (live > 0 && queued > 0 && queued + item.size > capacity) {
+					wait();
+				}
+				queued += item.size;
+				size = queued;
+			}
+			queue.put(item);
+			occupancy.add(size);
+			added.increment();
+			peak.accumulateAndGet(size, Math::max);
+		}
+
+		/**
+		 * Takes the next file from the queue, waiting while it is empty, and
+		 * makes room for the files waiting to be added.
+		 *
+		 * @return the next file, or {@link PipelinedInvertedIndexBuilder#END}
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		private Item take() throws InterruptedException {
+			Item item = queue.take();
+			if (item != END) {
+				synchronized (this) {
+					queued -= item.size;
+					notifyAll();
+				}
+			}
+			return item;
+		}
+
+		/**
+		 * Starts the threads of the stage
+		 */
+		public void start() {
+			started = System.nanoTime();
+			synchronized (this) {
+				live = threads;
+			}
+			for (int i = 0; i < threads; i++) {
+				Thread worker = new Thread(this::run, name + "-" + (i + 1));
+				worker.setDaemon(true);
+				workers.add(worker);
+				worker.start();
+			}
+		}
+
+		/**
+		 * Handles files until the end of the files is reached, passing each
+		 * one on to the next stage. A thread that stops early, because it was
+		 * interrupted, lets files into the queue without waiting once it is the
+		 * last one of the stage.
+		 */
+		private void run() {
+			Stage next = stages.indexOf(this) + 1 < stages.size() ? stages.get(stages.indexOf(this) + 1) : null;
+			try {
+				Item item;
+				while ((item = take()) != END) {
+					long start = System.nanoTime();
+					Item result = null;
+					try {
+						result = work.apply(item);
+					}
+					catch (RuntimeException e) {
+						log.error("Unable to {} {}. ", name, item.path, e);
+					}
+					busy.add(System.nanoTime() - start);
+					handled.increment();
+					if (result != null && next != null) {
+						next.put(result);
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				synchronized (this) {
+					live--;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Tells every thread of the stage that there are no more files and
+		 * waits for them to finish the files already queued. The end of the
+		 * files is added past the bound of the queue, so this never waits for
+		 * room, even if the threads of the stage have stopped early.
+		 */
+		public void finish() {
+			boolean interrupted = false;
+			for (int i = 0; i < workers.size(); i++) {
+				queue.add(END);
+			}
+			for (Thread worker : workers) {
+				while (worker.isAlive()) {
+					try {
+						worker.join();
+					}
+					catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			workers.clear();
+			running.add(System.nanoTime() - started);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public String toString() {
+			double seconds = busy.sum() / 1e9;
+			double utilization = running.sum() == 0 ? 0 : (double) busy.sum() / running.sum() / threads;
+			double average = added.sum() == 0 ? 0 : (double) occupancy.sum() / added.sum();
+			return String.format("%-8s threads %d, files %d, %.1f files per busy second, %.0f%% busy, queue %.1f of %.1f MiB on average, peak %.1f MiB",
+					name, threads, handled.sum(), seconds == 0 ? 0.0 : handled.sum() / seconds * threads,
+					100 * utilization, average / (1 << 20), (double) capacity / (1 << 20), (double) peak.get() / (1 << 20));
+		}
+	}
+}
@@ -0,0 +1,354 @@
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * Stores the positions a word is found at in a single location. Positions are
+ * kept sorted and unique in a growable primitive array, so no {@link Integer}
+ * objects are created while indexing.
+ *
+ * Once a location is finished, the list may be frozen into a compact form that
+ * stores the gaps between positions as variable-byte integers. Frozen lists are
+ * decoded lazily while iterating, and are thawed back into an array if another
+ * position is added.
+ *
+ * @author tiffanyz
+ */
+public class PositionList {
+	/** The capacity of a new position list */
+	private static final int INITIAL_CAPACITY = 4;
+	/** The positions stored in increasing order, or null if frozen */
+	private int[] positions;
+	/** The variable-byte encoded gaps between positions, or null if not frozen */
+	private ByteBuffer encoded;
+	/** The number of positions stored */
+	private int size;
+
+	/**
+	 * Constructor: creates an empty position list
+	 */
+	public PositionList() {
+		this.positions = new int[INITIAL_CAPACITY];
+		this.encoded = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Constructor: creates a frozen position list from encoded positions. The
+	 * buffer is read with absolute gets only, so it may be a shared view.
+	 *
+	 * @param encoded the variable-byte encoded gaps between positions
+	 * @param size the number of positions encoded
+	 *
+	 * @see #freeze()
+	 */
+	public PositionList(ByteBuffer encoded, int size) {
+		this.positions = null;
+		this.encoded = encoded;
+		this.size = size;
+	}
+
+	/**
+	 * Adds the position if it is not already in the list. Positions are usually
+	 * added in increasing order, which only appends to the end of the array.
+	 *
+	 * @param position the position to add
+	 * @return true if the position was added
+	 */
+	public boolean add(int position) {
+		thaw();
+		if (size == 0 || positions[size - 1] < position) {
+			grow(size + 1);
+			positions[size++] = position;
+			return true;
+		}
+
+		int found = Arrays.binarySearch(positions, 0, size, position);
+		if (found >= 0) {
+			return false;
+		}
+
+		int insert = -(found + 1);
+		grow(size + 1);
+		System.arraycopy(positions, insert, positions, insert + 1, size - insert);
+		positions[insert] = position;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Adds all positions in the other list that are not already in this list.
+	 *
+	 * @param other the position list to add
+	 */
+	public void addAll(PositionList other) {
+		if (other.size == 0) {
+			return;
+		}
+		thaw();
+		int[] adding = other.toArray();
+		if (size == 0 || positions[size - 1] < adding[0]) {
+			grow(size + adding.length);
+			System.arraycopy(adding, 0, positions, size, adding.length);
+			size += adding.length;
+			return;
+		}
+
+		int[] merged = new int[size + adding.length];
+		int i = 0, j = 0, n = 0;
+		while (i < size && j < adding.length) {
+			if (positions[i] < adding[j]) {
+				merged[n++] = positions[i++];
+			}
+			else if (positions[i] > adding[j]) {
+				merged[n++] = adding[j++];
+			}
+			else {
+				merged[n++] = positions[i++];
+				j++;
+			}
+		}
+		while (i < size) {
+			merged[n++] = positions[i++];
+		}
+		while (j < adding.length) {
+			merged[n++] = adding[j++];
+		}
+		this.positions = merged;
+		this.size = n;
+	}
+
+	/**
+	 * Moves every position up by the offset, such as when positions counted
+	 * from the start of a chunk are moved to count from the start of its file.
+	 * A frozen list is thawed first.
+	 *
+	 * @param offset the number to add to every position
+	 */
+	public void shift(int offset) {
+		thaw();
+		for (int i = 0; i < size; i++) {
+			positions[i] += offset;
+		}
+	}
+
+	/**
+	 * Makes sure the array can hold at least the given number of positions.
+	 *
+	 * @param capacity the number of positions needed
+	 */
+	private void grow(int capacity) {
+		if (capacity > positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+		}
+	}
+
+	/**
+	 * Compresses the positions by storing the gap from each position to the
+	 * previous one as a variable-byte integer, using 7 bits per byte with the
+	 * high bit marking the last byte of each gap.
+	 *
+	 * @return the number of bytes used by the encoded positions
+	 */
+	public int freeze() {
+		if (encoded == null) {
+			encoded = encode();
+			positions = null;
+		}
+		return encoded.limit();
+	}
+
+	/**
+	 * Returns the positions in the compressed form without changing how this
+	 * list stores them.
+	 *
+	 * @return the variable-byte encoded gaps between positions
+	 *
+	 * @see #freeze()
+	 */
+	public ByteBuffer encode() {
+		if (encoded != null) {
+			return encoded.duplicate();
+		}
+		byte[] bytes = new byte[size * 5];
+		int length = 0;
+		int previous = 0;
+		for (int i = 0; i < size; i++) {
+			int gap = positions[i] - previous;
+			previous = positions[i];
+			while (gap >= 0x80) {
+				bytes[length++] = (byte) (gap & 0x7F);
+				gap >>>= 7;
+			}
+			bytes[length++] = (byte) (gap | 0x80);
+		}
+		return ByteBuffer.wrap(Arrays.copyOf(bytes, length));
+	}
+
+	/**
+	 * Checks that encoded positions, such as those read from a file, decode to
+	 * exactly the given number of increasing positions and use every byte.
+	 *
+	 * @param encoded the variable-byte encoded gaps between positions
+	 * @param size the number of positions that should be encoded
+	 * @return true if the positions can be used to create a frozen list
+	 *
+	 * @see #PositionList(ByteBuffer, int)
+	 */
+	public static boolean isValid(ByteBuffer encoded, int size) {
+		int offset = 0;
+		long previous = 0;
+		for (int i = 0; i < size; i++) {
+			long gap = 0;
+			int shift = 0;
+			byte b;
+			do {
+				if (offset >= encoded.limit() || shift > 28) {
+					return false;
+				}
+				b = encoded.get(offset++);
+				gap |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) == 0);
+
+			previous += gap;
+			if ((i > 0 && gap == 0) || previous > Integer.MAX_VALUE) {
+				return false;
+			}
+		}
+		return offset == encoded.limit();
+	}
+
+	/**
+	 * Decodes a frozen list back into an array so positions can be added.
+	 */
+	private void thaw() {
+		if (encoded != null) {
+			positions = toArray();
+			encoded = null;
+		}
+	}
+
+	/**
+	 * @return true if the positions are stored in the compressed form
+	 */
+	public boolean isFrozen() {
+		return encoded != null;
+	}
+
+	/**
+	 * @return the number of positions in the list
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return a new array with all the positions in increasing order
+	 */
+	public int[] toArray() {
+		if (encoded == null) {
+			return Arrays.copyOf(positions, size);
+		}
+		int[] array = new int[size];
+		PrimitiveIterator.OfInt iterator = iterator();
+		for (int i = 0; i < size; i++) {
+			array[i] = iterator.nextInt();
+		}
+		return array;
+	}
+
+	/**
+	 * Returns an iterator over the positions in increasing order. Frozen lists
+	 * are decoded one position at a time.
+	 *
+	 * @return an iterator over the positions
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		if (encoded == null) {
+			return Arrays.stream(positions, 0, size).iterator();
+		}
+		ByteBuffer bytes = encoded;
+		int total = size;
+		return new PrimitiveIterator.OfInt() {
+			/** The number of positions returned so far */
+			private int returned = 0;
+			/** The index of the next encoded byte */
+			private int offset = 0;
+			/** The last position returned */
+			private int previous = 0;
+
+			@Override
+			public boolean hasNext() {
+				return returned < total;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int gap = 0;
+				int shift = 0;
+				byte b;
+				while (((b = bytes.get(offset++)) & 0x80) == 0) {
+					gap |= b << shift;
+					shift += 7;
+				}
+				gap |= (b & 0x7F) << shift;
+				returned++;
+				previous += gap;
+				return previous;
+			}
+		};
+	}
+
+	/**
+	 * @param position used to search
+	 * @return true if the position is in the list
+	 */
+	public boolean contains(int position) {
+		if (encoded == null) {
+			return Arrays.binarySearch(positions, 0, size, position) >= 0;
+		}
+		PrimitiveIterator.OfInt iterator = iterator();
+		while (iterator.hasNext()) {
+			int next = iterator.nextInt();
+			if (next >= position) {
+				return next == position;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return an unmodifiable set view of the positions
+	 */
+	public Set<Integer> asSet() {
+		return new AbstractSet<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return PositionList.this.iterator();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof Integer && PositionList.this.contains((Integer) o);
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return asSet().toString();
+	}
+}
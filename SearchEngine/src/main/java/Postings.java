@@ -0,0 +1,179 @@
+import java.util.Arrays;
+
+/**
+ * Stores the locations a single word is found in, as document IDs in increasing
+ * order, together with the positions of the word in each of those locations.
+ *
+ * @author tiffanyz
+ *
+ * @see DocumentTable
+ */
+public class Postings {
+	/** The capacity of a new postings list */
+	private static final int INITIAL_CAPACITY = 2;
+	/** The document IDs in increasing order */
+	private int[] documents;
+	/** The positions for each document, parallel to {@link #documents} */
+	private PositionList[] positions;
+	/** The number of documents stored */
+	private int size;
+
+	/**
+	 * Constructor: creates an empty postings list
+	 */
+	public Postings() {
+		this.documents = new int[INITIAL_CAPACITY];
+		this.positions = new PositionList[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the positions for the document, adding an empty position list if
+	 * the document is not in the postings yet. Documents are usually added in
+	 * increasing order, which only appends to the end of the arrays.
+	 *
+	 * @param document the document ID
+	 * @return the positions of the word in the document
+	 */
+	public PositionList add(int document) {
+		int found = find(document);
+		if (found >= 0) {
+			return positions[found];
+		}
+		PositionList list = new PositionList();
+		insert(-(found + 1), document, list);
+		return list;
+	}
+
+	/**
+	 * Sets the positions for the document, replacing any positions it had.
+	 *
+	 * @param document the document ID
+	 * @param list the positions of the word in the document
+	 */
+	public void put(int document, PositionList list) {
+		int found = find(document);
+		if (found >= 0) {
+			positions[found] = list;
+		}
+		else {
+			insert(-(found + 1), document, list);
+		}
+	}
+
+	/**
+	 * Adds all documents and positions of the other postings to this one.
+	 * Position lists of documents that are new to this postings are shared
+	 * rather than copied, and shared lists are never modified afterwards.
+	 *
+	 * @param other the postings to add
+	 * @param remap maps the other postings' document IDs to the IDs used by this
+	 *        postings, or null if both use the same IDs
+	 */
+	public void addAll(Postings other, int[] remap) {
+		for (int i = 0; i < other.size; i++) {
+			int document = remap == null ? other.documents[i] : remap[other.documents[i]];
+			int found = find(document);
+			if (found >= 0) {
+				PositionList merged = new PositionList();
+				merged.addAll(positions[found]);
+				merged.addAll(other.positions[i]);
+				positions[found] = merged;
+			}
+			else {
+				insert(-(found + 1), document, other.positions[i]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the index of the document in the postings.
+	 *
+	 * @param document the document ID
+	 * @return the index of the document, or {@code -(insertion point) - 1} if it
+	 *         is not in the postings
+	 *
+	 * @see Arrays#binarySearch(int[], int, int, int)
+	 */
+	public int find(int document) {
+		if (size == 0 || documents[size - 1] < document) {
+			return -(size + 1);
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Finds the first document at or after the given index whose ID is at least
+	 * the given document ID. The search gallops forward from the index before
+	 * switching to a binary search, so skipping a few documents stays cheap.
+	 *
+	 * @param from the index to start from
+	 * @param document the document ID to skip to
+	 * @return the index of the first document with an ID of at least the given
+	 *         one, or the size of the postings if there is none
+	 */
+	public int advance(int from, int document) {
+		int low = from;
+		int step = 1;
+		while (low + step < size && documents[low + step] < document) {
+			low += step;
+			step *= 2;
+		}
+		int high = Math.min(size, low + step + 1);
+		int found = Arrays.binarySearch(documents, low, high, document);
+		return found >= 0 ? found : -(found + 1);
+	}
+
+	/**
+	 * Inserts the document and its positions at the given index.
+	 *
+	 * @param index where to insert
+	 * @param document the document ID
+	 * @param list the positions of the word in the document
+	 */
+	private void insert(int index, int document, PositionList list) {
+		if (size == documents.length) {
+			int capacity = documents.length * 2;
+			documents = Arrays.copyOf(documents, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		documents[index] = document;
+		positions[index] = list;
+		size++;
+	}
+
+	/**
+	 * @return the number of documents in the postings
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i the index in the postings
+	 * @return the document ID at the given index
+	 */
+	public int document(int i) {
+		return documents[i];
+	}
+
+	/**
+	 * @param i the index in the postings
+	 * @return the positions at the given index
+	 */
+	public PositionList positions(int i) {
+		return positions[i];
+	}
+
+	/**
+	 * @param document the document ID
+	 * @return the positions of the word in the document, or null if the word is
+	 *         not found in the document
+	 */
+	public PositionList get(int document) {
+		int found = find(document);
+		return found >= 0 ? positions[found] : null;
+	}
+}
@@ -0,0 +1,785 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * A parsed search query, as a tree of clauses. A query line is a set of
+ * clauses, and a document is scored by how many times any of the clauses
+ * matches it, just like a line of plain words where every word is a clause.
+ * Besides plain words, a clause may be a quoted phrase, two words that must be
+ * near each other, or clauses combined with AND and NOT.
+ *
+ * Phrase and proximity clauses match their words exactly even in a partial
+ * search, and are found by intersecting the stored positions of their words.
+ * A clause that is only a NOT matches nothing on its own, and only removes
+ * documents from the clauses it is combined with.
+ *
+ * @author tiffanyz
+ *
+ * @see QueryParser
+ */
+public abstract class Query {
+	/**
+	 * Finds the documents matched by the query.
+	 *
+	 * @param index the index to search; the caller must hold its read lock
+	 * @param exact indicates whether plain words must match exactly or only
+	 *        start a word in the index
+	 * @return the matched documents with the number of matches in each
+	 */
+	public abstract Matches evaluate(InvertedIndex index, boolean exact);
+
+	/**
+	 * Estimates how many documents the query has to look at, which is used to
+	 * intersect the cheapest clauses first.
+	 *
+	 * @param index the index to search; the caller must hold its read lock
+	 * @param exact indicates whether plain words must match exactly
+	 * @return an estimate of the number of postings the query walks
+	 */
+	public abstract long cost(InvertedIndex index, boolean exact);
+
+	/**
+	 * Keeps the candidates that this query also matches, adding this query's
+	 * matches to their counts.
+	 *
+	 * @param candidates the documents matched so far
+	 * @param index the index to search; the caller must hold its read lock
+	 * @param exact indicates whether plain words must match exactly
+	 * @return the candidates that this query matches
+	 */
+	public Matches retain(Matches candidates, InvertedIndex index, boolean exact) {
+		return candidates.and(evaluate(index, exact));
+	}
+
+	/**
+	 * Removes the candidates that this query matches, keeping the counts of the
+	 * others.
+	 *
+	 * @param candidates the documents matched so far
+	 * @param index the index to search; the caller must hold its read lock
+	 * @param exact indicates whether plain words must match exactly
+	 * @return the candidates that this query does not match
+	 */
+	public Matches remove(Matches candidates, InvertedIndex index, boolean exact) {
+		return candidates.andNot(evaluate(index, exact));
+	}
+
+	/**
+	 * Returns the plain and fuzzy words of the query if it has no other
+	 * clauses, so each word can be searched and scored on its own.
+	 *
+	 * @return the words of the query with the number of edits allowed for
+	 *         each, which is 0 for a plain word, or null if the query has other
+	 *         clauses
+	 */
+	public Map<String, Integer> getTerms() {
+		return null;
+	}
+
+	/**
+	 * @return true if the query has nothing to search for
+	 */
+	public boolean isEmpty() {
+		return false;
+	}
+
+	/**
+	 * Returns the postings of the word across every part of the index.
+	 *
+	 * @param index the index to search
+	 * @param word the word to find
+	 * @return the postings of the word, or null if it is not in the index
+	 */
+	protected static Postings getPostings(InvertedIndex index, String word) {
+		List<Postings> found = index.findPostings(word, true);
+		if (found.isEmpty()) {
+			return null;
+		}
+		if (found.size() == 1) {
+			return found.get(0);
+		}
+		Postings merged = new Postings();
+		for (Postings postings : found) {
+			merged.addAll(postings, null);
+		}
+		return merged;
+	}
+
+	/**
+	 * @param index the index to search
+	 * @param word the word to find
+	 * @param exact indicates whether only the word itself matches
+	 * @return the number of postings of the word, or of every word it starts
+	 */
+	protected static long countPostings(InvertedIndex index, String word, boolean exact) {
+		long count = 0;
+		for (Postings postings : index.findPostings(word, exact)) {
+			count += postings.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the documents that contain every one of the words, and counts the
+	 * matches in each of them. The postings are intersected starting from the
+	 * shortest one, and the others skip ahead to its documents.
+	 *
+	 * @param index the index to search
+	 * @param words the words that must all be in a document
+	 * @param counter counts the matches given the positions of each word in a
+	 *        document, in the same order as the words
+	 * @return the documents with at least one match
+	 */
+	protected static Matches intersect(InvertedIndex index, List<String> words, ToIntFunction<PositionList[]> counter) {
+		Matches matches = new Matches();
+		int size = words.size();
+		Postings[] postings = new Postings[size];
+		for (int i = 0; i < size; i++) {
+			postings[i] = getPostings(index, words.get(i));
+			if (postings[i] == null) {
+				return matches;
+			}
+		}
+		int[] order = IntStream.range(0, size).boxed()
+				.sorted(Comparator.comparingInt(i -> postings[i].size()))
+				.mapToInt(Integer::intValue).toArray();
+
+		int[] at = new int[size];
+		PositionList[] positions = new PositionList[size];
+		int lead = order[0];
+		while (at[lead] < postings[lead].size()) {
+			int document = postings[lead].document(at[lead]);
+			int next = document;
+			for (int o = 1; o < size && next == document; o++) {
+				int i = order[o];
+				at[i] = postings[i].advance(at[i], document);
+				if (at[i] == postings[i].size()) {
+					return matches;
+				}
+				next = postings[i].document(at[i]);
+			}
+			if (next != document) {
+				at[lead] = postings[lead].advance(at[lead], next);
+				continue;
+			}
+
+			for (int i = 0; i < size; i++) {
+				positions[i] = postings[i].positions(at[i]);
+			}
+			int count = counter.applyAsInt(positions);
+			if (count > 0) {
+				matches.add(document, count);
+			}
+			at[lead]++;
+		}
+		return matches;
+	}
+
+	/**
+	 * Finds the first value at or after the given index that is at least the
+	 * target, galloping forward before switching to a binary search.
+	 *
+	 * @param values the values in increasing order
+	 * @param from the index to start from
+	 * @param target the value to skip to
+	 * @return the index of the first value of at least the target, or the
+	 *         length of the array if there is none
+	 *
+	 * @see Postings#advance(int, int)
+	 */
+	protected static int advance(int[] values, int from, int target) {
+		int low = from;
+		int step = 1;
+		while (low + step < values.length && values[low + step] < target) {
+			low += step;
+			step *= 2;
+		}
+		int high = Math.min(values.length, low + step + 1);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < target) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * A plain word, which matches every position of the word, or of every word
+	 * it starts in a partial search
+	 */
+	public static class Term extends Query {
+		/** the stemmed word */
+		private final String word;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param word the stemmed word
+		 */
+		public Term(String word) {
+			this.word = word;
+		}
+
+		/**
+		 * @return the stemmed word
+		 */
+		public String getWord() {
+			return word;
+		}
+
+		@Override
+		public Matches evaluate(InvertedIndex index, boolean exact) {
+			Matches matches = new Matches();
+			for (Postings postings : index.findPostings(word, exact)) {
+				matches = matches.or(Matches.of(postings));
+			}
+			return matches;
+		}
+
+		@Override
+		public long cost(InvertedIndex index, boolean exact) {
+			return countPostings(index, word, exact);
+		}
+
+		@Override
+		public Matches retain(Matches candidates, InvertedIndex index, boolean exact) {
+			return filter(candidates, index, exact, true);
+		}
+
+		@Override
+		public Matches remove(Matches candidates, InvertedIndex index, boolean exact) {
+			return filter(candidates, index, exact, false);
+		}
+
+		/**
+		 * Walks the candidates and skips each postings of the word ahead to
+		 * them, so the postings are never copied.
+		 *
+		 * @param candidates the documents matched so far
+		 * @param index the index to search
+		 * @param exact indicates whether only the word itself matches
+		 * @param keep true to keep the candidates with the word, false to keep
+		 *        the candidates without it
+		 * @return the candidates that were kept
+		 */
+		private Matches filter(Matches candidates, InvertedIndex index, boolean exact, boolean keep) {
+			List<Postings> found = index.findPostings(word, exact);
+			int[] at = new int[found.size()];
+			Matches kept = new Matches();
+			for (int i = 0; i < candidates.size(); i++) {
+				int document = candidates.document(i);
+				int count = 0;
+				boolean matched = false;
+				for (int j = 0; j < at.length; j++) {
+					Postings postings = found.get(j);
+					at[j] = postings.advance(at[j], document);
+					if (at[j] < postings.size() && postings.document(at[j]) == document) {
+						count += postings.positions(at[j]).size();
+						matched = true;
+					}
+				}
+				if (matched == keep) {
+					kept.add(document, candidates.count(i) + count);
+				}
+			}
+			return kept;
+		}
+
+		@Override
+		public String toString() {
+			return word;
+		}
+	}
+
+	/**
+	 * A word that may be misspelled, which matches every position of the words
+	 * in the index within a number of edits of it. Closer words are worth more
+	 * when the words of a query are scored on their own. Fuzzy words are not
+	 * extended in a partial search.
+	 */
+	public static class Fuzzy extends Query {
+		/** the largest number of edits that may be asked for */
+		public static final int MAX_DISTANCE = 2;
+
+		/** the stemmed word */
+		private final String word;
+		/** the largest number of edits between the word and a match */
+		private final int distance;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param word the stemmed word
+		 * @param distance the largest number of edits between the word and a
+		 *        match, from 1 to {@link #MAX_DISTANCE}
+		 */
+		public Fuzzy(String word, int distance) {
+			if (distance < 1 || distance > MAX_DISTANCE) {
+				throw new IllegalArgumentException("Distance must be from 1 to " + MAX_DISTANCE + ": " + distance);
+			}
+			this.word = word;
+			this.distance = distance;
+		}
+
+		/**
+		 * Returns the number of edits to allow for a word when none is given.
+		 * Short words allow fewer edits, since a single edit turns them into
+		 * many other words.
+		 *
+		 * @param word the stemmed word
+		 * @return 0 for words of up to 2 letters, 1 for words of up to 5
+		 *         letters, and 2 otherwise
+		 */
+		public static int defaultDistance(String word) {
+			return word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2;
+		}
+
+		/**
+		 * Halves the score of a match for each edit. Powers of two are exact, so
+		 * boosted counts add up the same in any order.
+		 *
+		 * @param distance the number of edits between a word and a match
+		 * @return the factor the score of the match is multiplied by
+		 */
+		public static double boost(int distance) {
+			return Math.scalb(1.0, -distance);
+		}
+
+		/**
+		 * @return the stemmed word
+		 */
+		public String getWord() {
+			return word;
+		}
+
+		/**
+		 * @return the largest number of edits between the word and a match
+		 */
+		public int getDistance() {
+			return distance;
+		}
+
+		@Override
+		public Matches evaluate(InvertedIndex index, boolean exact) {
+			Matches matches = new Matches();
+			for (Postings postings : index.findPostings(word, distance)) {
+				matches = matches.or(Matches.of(postings));
+			}
+			return matches;
+		}
+
+		@Override
+		public long cost(InvertedIndex index, boolean exact) {
+			long cost = 0;
+			for (Postings postings : index.findPostings(word, distance)) {
+				cost += postings.size();
+			}
+			return cost;
+		}
+
+		@Override
+		public String toString() {
+			return word + "~" + distance;
+		}
+	}
+
+	/**
+	 * Words that must appear next to each other in the given order, which
+	 * matches once for every place the whole phrase appears
+	 */
+	public static class Phrase extends Query {
+		/** the stemmed words of the phrase */
+		private final List<String> words;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param words the stemmed words of the phrase
+		 */
+		public Phrase(List<String> words) {
+			this.words = List.copyOf(words);
+		}
+
+		@Override
+		public Matches evaluate(InvertedIndex index, boolean exact) {
+			return intersect(index, words, Phrase::countPhrases);
+		}
+
+		@Override
+		public long cost(InvertedIndex index, boolean exact) {
+			long cost = Long.MAX_VALUE;
+			for (String word : words) {
+				cost = Math.min(cost, countPostings(index, word, true));
+			}
+			return cost;
+		}
+
+		/**
+		 * Counts where the phrase starts in a document. The positions of the
+		 * rarest word are shifted to where the phrase would start, and each of
+		 * the other words keeps only the starts it also has a position for.
+		 *
+		 * @param positions the positions of each word of the phrase
+		 * @return the number of times the phrase appears
+		 */
+		private static int countPhrases(PositionList[] positions) {
+			int shortest = 0;
+			for (int i = 1; i < positions.length; i++) {
+				if (positions[i].size() < positions[shortest].size()) {
+					shortest = i;
+				}
+			}
+			int[] starts = positions[shortest].toArray();
+			for (int s = 0; s < starts.length; s++) {
+				starts[s] -= shortest;
+			}
+
+			int count = starts.length;
+			for (int i = 0; i < positions.length && count > 0; i++) {
+				if (i == shortest) {
+					continue;
+				}
+				int[] values = positions[i].toArray();
+				int kept = 0;
+				int at = 0;
+				for (int s = 0; s < count; s++) {
+					at = advance(values, at, starts[s] + i);
+					if (at == values.length) {
+						break;
+					}
+					if (values[at] == starts[s] + i) {
+						starts[kept++] = starts[s];
+					}
+				}
+				count = kept;
+			}
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			return "\"" + String.join(" ", words) + "\"";
+		}
+	}
+
+	/**
+	 * Two words that must be within a number of positions of each other in
+	 * either order, which matches once for every position of the first word
+	 * that has the second word close enough
+	 */
+	public static class Near extends Query {
+		/** the first stemmed word */
+		private final String first;
+		/** the second stemmed word */
+		private final String second;
+		/** the largest number of positions between the words */
+		private final int distance;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param first the first stemmed word
+		 * @param second the second stemmed word
+		 * @param distance the largest number of positions between the words
+		 */
+		public Near(String first, String second, int distance) {
+			if (distance < 1) {
+				throw new IllegalArgumentException("Distance must be positive: " + distance);
+			}
+			this.first = first;
+			this.second = second;
+			this.distance = distance;
+		}
+
+		@Override
+		public Matches evaluate(InvertedIndex index, boolean exact) {
+			return intersect(index, List.of(first, second), this::countNear);
+		}
+
+		@Override
+		public long cost(InvertedIndex index, boolean exact) {
+			return Math.min(countPostings(index, first, true), countPostings(index, second, true));
+		}
+
+		/**
+		 * Counts the positions of the first word that have the second word
+		 * close enough. Different words never share a position, so the only
+		 * position skipped is the first word itself when both words are the
+		 * same.
+		 *
+		 * @param positions the positions of the first and second word
+		 * @return the number of matches in the document
+		 */
+		private int countNear(PositionList[] positions) {
+			int[] values = positions[1].toArray();
+			int count = 0;
+			int at = 0;
+			for (int position : positions[0].toArray()) {
+				at = advance(values, at, position - distance);
+				for (int i = at; i < values.length && values[i] <= position + distance; i++) {
+					if (values[i] != position) {
+						count++;
+						break;
+					}
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			return first + " NEAR/" + distance + " " + second;
+		}
+	}
+
+	/**
+	 * Clauses of which any may match, where a document's matches are the sum of
+	 * the matches of every clause. This is how the words of a plain query line
+	 * are combined.
+	 */
+	public static class Or extends Query {
+		/** the unique clauses, sorted by their text */
+		private final TreeMap<String, Query> clauses;
+
+		/**
+		 * Initializes the instance data
+		 */
+		public Or() {
+			this.clauses = new TreeMap<>();
+		}
+
+		/**
+		 * Adds a clause unless the same clause was already added. The clauses
+		 * of another OR are added one by one.
+		 *
+		 * @param clause the clause to add
+		 */
+		public void add(Query clause) {
+			if (clause instanceof Or) {
+				for (Query nested : ((Or) clause).clauses.values()) {
+					add(nested);
+				}
+			}
+			else {
+				clauses.putIfAbsent(clause.toString(), clause);
+			}
+		}
+
+		/**
+		 * @return the clauses in the order of their text
+		 */
+		public List<Query> getClauses() {
+			return Collections.unmodifiableList(new ArrayList<>(clauses.values()));
+		}
+
+		@Override
+		public Matches evaluate(InvertedIndex index, boolean exact) {
+			Matches matches = new Matches();
+			for (Query clause : clauses.values()) {
+				matches = matches.or(clause.evaluate(index, exact));
+			}
+			return matches;
+		}
+
+		@Override
+		public long cost(InvertedIndex index, boolean exact) {
+			long cost = 0;
+			for (Query clause : clauses.values()) {
+				cost += clause.cost(index, exact);
+			}
+			return cost;
+		}
+
+		@Override
+		public Map<String, Integer> getTerms() {
+			TreeMap<String, Integer> terms = new TreeMap<>();
+			for (Query clause : clauses.values()) {
+				String word;
+				int distance;
+				if (clause instanceof Term) {
+					word = ((Term) clause).getWord();
+					distance = 0;
+				}
+				else if (clause instanceof Fuzzy) {
+					word = ((Fuzzy) clause).getWord();
+					distance = ((Fuzzy) clause).getDistance();
+				}
+				else {
+					return null;
+				}
+				if (terms.put(word, distance) != null) {
+					return null;
+				}
+			}
+			return terms;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return clauses.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return String.join(" ", clauses.keySet());
+		}
+	}
+
+	/**
+	 * Clauses that must all match, where a document's matches are the sum of
+	 * the matches of every clause. Clauses under a NOT only remove documents.
+	 */
+	public static class And extends Query {
+		/** the unique clauses that must match, sorted by their text */
+		private final TreeMap<String, Query> clauses;
+		/** the unique clauses that must not match, sorted by their text */
+		private final TreeMap<String, Query> excluded;
+
+		/**
+		 * Initializes the instance data
+		 */
+		public And() {
+			this.clauses = new TreeMap<>();
+			this.excluded = new TreeMap<>();
+		}
+
+		/**
+		 * Adds a clause unless the same clause was already added. The clauses
+		 * of another AND are added one by one, and the clause under a NOT is
+		 * added as one that must not match.
+		 *
+		 * @param clause the clause to add
+		 */
+		public void add(Query clause) {
+			if (clause instanceof And) {
+				And other = (And) clause;
+				clauses.putAll(other.clauses);
+				excluded.putAll(other.excluded);
+			}
+			else if (clause instanceof Not) {
+				Query negated = ((Not) clause).getClause();
+				excluded.putIfAbsent(negated.toString(), negated);
+			}
+			else {
+				clauses.putIfAbsent(clause.toString(), clause);
+			}
+		}
+
+		/**
+		 * Evaluates the cheapest clause first, and then only keeps the
+		 * candidates the other clauses also match, from cheapest to most
+		 * expensive. Stops as soon as no candidates are left.
+		 */
+		@Override
+		public Matches evaluate(InvertedIndex index, boolean exact) {
+			if (clauses.isEmpty()) {
+				return new Matches();
+			}
+			Map<Query, Long> costs = new HashMap<>();
+			for (Query clause : clauses.values()) {
+				costs.put(clause, clause.cost(index, exact));
+			}
+			List<Query> ordered = new ArrayList<>(clauses.values());
+			ordered.sort(Comparator.comparing(costs::get));
+
+			Matches matches = ordered.get(0).evaluate(index, exact);
+			for (int i = 1; i < ordered.size() && matches.size() > 0; i++) {
+				matches = ordered.get(i).retain(matches, index, exact);
+			}
+			for (Query clause : excluded.values()) {
+				if (matches.size() == 0) {
+					break;
+				}
+				matches = clause.remove(matches, index, exact);
+			}
+			return matches;
+		}
+
+		@Override
+		public long cost(InvertedIndex index, boolean exact) {
+			long cost = clauses.isEmpty() ? 0 : Long.MAX_VALUE;
+			for (Query clause : clauses.values()) {
+				cost = Math.min(cost, clause.cost(index, exact));
+			}
+			return cost;
+		}
+
+		@Override
+		public String toString() {
+			List<String> parts = new ArrayList<>();
+			for (Query clause : clauses.values()) {
+				parts.add(clause instanceof Or ? "(" + clause + ")" : clause.toString());
+			}
+			for (Query clause : excluded.values()) {
+				parts.add(new Not(clause).toString());
+			}
+			return String.join(" AND ", parts);
+		}
+	}
+
+	/**
+	 * A clause that must not match. On its own it matches nothing, since there
+	 * is no clause to remove documents from.
+	 */
+	public static class Not extends Query {
+		/** the clause that must not match */
+		private final Query clause;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param clause the clause that must not match
+		 */
+		public Not(Query clause) {
+			this.clause = clause;
+		}
+
+		/**
+		 * @return the clause that must not match
+		 */
+		public Query getClause() {
+			return clause;
+		}
+
+		@Override
+		public Matches evaluate(InvertedIndex index, boolean exact) {
+			return new Matches();
+		}
+
+		@Override
+		public long cost(InvertedIndex index, boolean exact) {
+			return clause.cost(index, exact);
+		}
+
+		@Override
+		public Matches retain(Matches candidates, InvertedIndex index, boolean exact) {
+			return clause.remove(candidates, index, exact);
+		}
+
+		/**
+		 * Keeps the candidates that the negated clause matches, without adding
+		 * its matches to their counts.
+		 */
+		@Override
+		public Matches remove(Matches candidates, InvertedIndex index, boolean exact) {
+			return candidates.andNot(clause.remove(candidates, index, exact));
+		}
+
+		@Override
+		public String toString() {
+			boolean group = clause instanceof Or || clause instanceof And;
+			return "NOT " + (group ? "(" + clause + ")" : clause.toString());
+		}
+	}
+}
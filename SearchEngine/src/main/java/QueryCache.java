@@ -0,0 +1,287 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the results of recent searches of a thread-safe index, so a query
+ * that is searched again is answered without searching the index. Queries are
+ * told apart by their parsed text, which has sorted and unique words, together
+ * with the search type, the scorer and the number of results asked for.
+ *
+ * The cache is split into segments by the hash of the query, and each segment
+ * is locked on its own so searches of different queries rarely wait for each
+ * other. Each segment keeps its queries in order of last use, and drops the
+ * least recently used ones once its results take up more than its share of
+ * the capacity. Every cached result remembers the version of the index it was
+ * found in, and the whole cache is cleared as soon as the index changes.
+ *
+ * @author tiffanyz
+ *
+ * @see InvertedIndex#getVersion()
+ */
+public class QueryCache {
+	/** The number of results kept by default */
+	public static final long DEFAULT_CAPACITY = 100000;
+	/** The number of segments the cache is split into */
+	private static final int SEGMENTS = 16;
+
+	/** The index to search */
+	private final SafeInvertedIndex index;
+	/** The segments of the cache */
+	private final Segment[] segments;
+	/** The number of searches answered by the cache */
+	private final LongAdder hits;
+	/** The number of searches that had to search the index */
+	private final LongAdder misses;
+	/** The number of queries dropped to make room for others */
+	private final LongAdder evictions;
+	/** The number of times the cache was cleared because the index changed */
+	private final LongAdder invalidations;
+	/** The version of the index the cached results were found in */
+	private volatile long version;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param index the index to search
+	 * @param capacity the largest number of results to keep, where every query
+	 *        counts as at least one result
+	 */
+	public QueryCache(SafeInvertedIndex index, long capacity) {
+		if (capacity < SEGMENTS) {
+			throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS + ": " + capacity);
+		}
+		this.index = index;
+		this.segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(capacity / SEGMENTS);
+		}
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+		this.invalidations = new LongAdder();
+		this.version = index.getVersion();
+	}
+
+	/**
+	 * Searches for a parsed query, keeping only the best results, or returns
+	 * the results of the same search if they are still cached.
+	 *
+	 * @param query the parsed query to search for
+	 * @param exact indicating whether or not to do a exact search
+	 * @param k the maximum number of results to return
+	 * @param scorer the scorer used to rank the results
+	 * @return a list of at most k search results
+	 *
+	 * @see InvertedIndex#search(Query, boolean, int, Scorer)
+	 */
+	public ArrayList<InvertedIndex.SearchResult> search(Query query, boolean exact, int k, Scorer scorer) {
+		long current = index.getVersion();
+		if (current != version) {
+			invalidate(current);
+		}
+
+		Key key = new Key(query.toString(), exact, k, scorer);
+		Segment segment = segments[Math.floorMod(key.hashCode(), SEGMENTS)];
+		Entry cached = segment.get(key);
+		if (cached != null && cached.version == current) {
+			hits.increment();
+			return new ArrayList<>(cached.results);
+		}
+
+		misses.increment();
+		ArrayList<InvertedIndex.SearchResult> results = index.search(query, exact, k, scorer);
+		if (current == version) {
+			segment.put(key, new Entry(new ArrayList<>(results), current));
+		}
+		return results;
+	}
+
+	/**
+	 * Clears every segment if the index has moved on to a newer version than
+	 * the cached results were found in.
+	 *
+	 * @param current the version of the index
+	 */
+	private synchronized void invalidate(long current) {
+		if (current > version) {
+			for (Segment segment : segments) {
+				segment.clear();
+			}
+			version = current;
+			invalidations.increment();
+		}
+	}
+
+	/**
+	 * @return the number of searches answered by the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of searches that had to search the index
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of queries dropped to make room for others
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the number of times the cache was cleared because the index changed
+	 */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d hits, %d misses, %d evictions, %d invalidations",
+				getHits(), getMisses(), getEvictions(), getInvalidations());
+	}
+
+	/**
+	 * The search that results are cached for
+	 */
+	private static class Key {
+		/** the parsed text of the query */
+		private final String query;
+		/** whether the search was exact */
+		private final boolean exact;
+		/** the maximum number of results asked for */
+		private final int k;
+		/** the scorer used to rank the results */
+		private final Scorer scorer;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param query the parsed text of the query
+		 * @param exact whether the search was exact
+		 * @param k the maximum number of results asked for
+		 * @param scorer the scorer used to rank the results
+		 */
+		public Key(String query, boolean exact, int k, Scorer scorer) {
+			this.query = query;
+			this.exact = exact;
+			this.k = k;
+			this.scorer = scorer;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return query.equals(key.query) && exact == key.exact && k == key.k && scorer.equals(key.scorer);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(query, exact, k, scorer);
+		}
+	}
+
+	/**
+	 * The cached results of a search
+	 */
+	private static class Entry {
+		/** the results of the search */
+		private final ArrayList<InvertedIndex.SearchResult> results;
+		/** the version of the index the results were found in */
+		private final long version;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param results the results of the search
+		 * @param version the version of the index the results were found in
+		 */
+		public Entry(ArrayList<InvertedIndex.SearchResult> results, long version) {
+			this.results = results;
+			this.version = version;
+		}
+
+		/**
+		 * @return the room the entry takes up, which is its number of results
+		 *         and at least one
+		 */
+		public int weight() {
+			return Math.max(1, results.size());
+		}
+	}
+
+	/**
+	 * A part of the cache with its own lock, which keeps its queries in order of
+	 * last use
+	 */
+	private class Segment {
+		/** the cached results, from the least to the most recently used */
+		private final LinkedHashMap<Key, Entry> entries;
+		/** the largest total weight of the entries */
+		private final long capacity;
+		/** the total weight of the entries */
+		private long weight;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param capacity the largest total weight of the entries
+		 */
+		public Segment(long capacity) {
+			this.entries = new LinkedHashMap<>(16, 0.75f, true);
+			this.capacity = capacity;
+			this.weight = 0;
+		}
+
+		/**
+		 * @param key the search to look up
+		 * @return the cached results, or null if there are none
+		 */
+		public synchronized Entry get(Key key) {
+			return entries.get(key);
+		}
+
+		/**
+		 * Caches the results, dropping the least recently used entries until
+		 * the segment fits in its capacity again. Results larger than the whole
+		 * segment are not cached.
+		 *
+		 * @param key the search the results are for
+		 * @param entry the results to cache
+		 */
+		public synchronized void put(Key key, Entry entry) {
+			if (entry.weight() > capacity) {
+				return;
+			}
+			Entry previous = entries.put(key, entry);
+			weight += entry.weight() - (previous != null ? previous.weight() : 0);
+			Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+			while (weight > capacity && iterator.hasNext()) {
+				Entry eldest = iterator.next().getValue();
+				iterator.remove();
+				weight -= eldest.weight();
+				evictions.increment();
+			}
+		}
+
+		/**
+		 * Removes every entry
+		 */
+		public synchronized void clear() {
+			entries.clear();
+			weight = 0;
+		}
+	}
+}
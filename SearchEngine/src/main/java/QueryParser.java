@@ -0,0 +1,449 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * Parses a line of a query file, or a query entered in the search box, into a
+ * {@link Query}. The syntax is:
+ *
+ * <pre>
+ * apple banana          documents with apple or banana
+ * apple OR banana       the same as above
+ * apple AND pie         documents with both apple and pie
+ * apple NOT pie         documents with apple but not pie
+ * (apple OR pear) AND pie
+ * "granny smith apple"  documents with the words next to each other
+ * apple NEAR/3 pie      documents with the words at most 3 positions apart
+ * aple~                 documents with words a few letters away from aple
+ * aple~1                documents with words at most 1 letter away from aple
+ * </pre>
+ *
+ * NEAR binds tightest, as it only joins the two words next to it, then NOT,
+ * then AND, and words next to each other are combined with OR, so
+ * {@code NOT apple NEAR/3 pie} removes the documents with the words close
+ * together. A NOT among words next to each other removes documents
+ * from all of them. Operators must be upper case and have their operands next
+ * to them, otherwise they are searched for as words. Words are cleaned and
+ * stemmed the same way as the text that was indexed, so a line without
+ * operators, quotes, parentheses or tildes gives the same words as
+ * {@link TextStemmer#uniqueStems(String)}.
+ *
+ * @author tiffanyz
+ */
+public class QueryParser {
+	/** Regular expression that matches the proximity operator */
+	public static final Pattern NEAR_REGEX = Pattern.compile("NEAR/([1-9][0-9]{0,8})");
+	/** Regular expression that matches a fuzzy word with an optional number of edits */
+	public static final Pattern FUZZY_REGEX = Pattern.compile("(.+)~([0-9]?)");
+
+	/** The tokens of the line being parsed */
+	private final List<Token> tokens;
+	/** The index of the next token to parse */
+	private int next;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param tokens the tokens of the line to parse
+	 */
+	private QueryParser(List<Token> tokens) {
+		this.tokens = tokens;
+		this.next = 0;
+	}
+
+	/**
+	 * Parses the line using the default stemmer.
+	 *
+	 * @param line the query line to parse
+	 * @return the parsed query
+	 *
+	 * @see TextStemmer#getStemmer()
+	 */
+	public static Query parse(String line) {
+		return parse(line, TextStemmer.getStemmer());
+	}
+
+	/**
+	 * Parses the line. Text between double quotes is a phrase, and an unclosed
+	 * quote or parenthesis runs to the end of the line.
+	 *
+	 * @param line the query line to parse
+	 * @param stemmer the stemmer to use
+	 * @return the parsed query
+	 */
+	public static Query parse(String line, Stemmer stemmer) {
+		return parse(line, stemmer, false);
+	}
+
+	/**
+	 * Parses the line using the default stemmer, optionally treating every
+	 * plain word as a fuzzy word.
+	 *
+	 * @param line the query line to parse
+	 * @param fuzzy true to allow the default number of edits in plain words
+	 * @return the parsed query
+	 *
+	 * @see Query.Fuzzy#defaultDistance(String)
+	 */
+	public static Query parse(String line, boolean fuzzy) {
+		return parse(line, TextStemmer.getStemmer(), fuzzy);
+	}
+
+	/**
+	 * Parses the line, optionally treating every plain word as a fuzzy word.
+	 *
+	 * @param line the query line to parse
+	 * @param stemmer the stemmer to use
+	 * @param fuzzy true to allow the default number of edits in plain words
+	 * @return the parsed query
+	 */
+	public static Query parse(String line, Stemmer stemmer, boolean fuzzy) {
+		List<Token> tokens = tokenize(line, stemmer);
+		if (fuzzy) {
+			for (int i = 0; i < tokens.size(); i++) {
+				Token token = tokens.get(i);
+				if (token.kind == Kind.WORD && token.distance == 0) {
+					tokens.set(i, new Token(Kind.WORD, token.text, null, Query.Fuzzy.defaultDistance(token.text)));
+				}
+			}
+		}
+		checkOperators(tokens, stemmer);
+		return new QueryParser(tokens).parseSequence(0, true);
+	}
+
+	/**
+	 * Splits the line into words, phrases, parentheses and operators.
+	 * Parentheses only count at the start or end of a word, so text like
+	 * {@code f(x)} is cleaned into a single word as before.
+	 *
+	 * @param line the query line to split
+	 * @param stemmer the stemmer to use
+	 * @return the tokens of the line
+	 */
+	private static List<Token> tokenize(String line, Stemmer stemmer) {
+		List<Token> tokens = new ArrayList<>();
+		String[] parts = line.split("\"", -1);
+		for (int i = 0; i < parts.length; i++) {
+			if (i % 2 == 1) {
+				ArrayList<String> words = TextStemmer.listStems(parts[i], stemmer);
+				if (words.size() == 1) {
+					tokens.add(new Token(Kind.WORD, words.get(0), null, 0));
+				}
+				else if (words.size() > 1) {
+					tokens.add(new Token(Kind.PHRASE, parts[i], words, 0));
+				}
+				continue;
+			}
+
+			for (String chunk : TextParser.split(parts[i])) {
+				int start = 0;
+				int end = chunk.length();
+				while (start < end && chunk.charAt(start) == '(') {
+					tokens.add(new Token(Kind.OPEN, "(", null, 0));
+					start++;
+				}
+				int closing = 0;
+				while (end > start && chunk.charAt(end - 1) == ')') {
+					closing++;
+					end--;
+				}
+
+				String text = chunk.substring(start, end);
+				Matcher near = NEAR_REGEX.matcher(text);
+				Matcher fuzzy = FUZZY_REGEX.matcher(text);
+				if (text.equals("AND") || text.equals("OR") || text.equals("NOT")) {
+					tokens.add(new Token(Kind.valueOf(text), text, null, 0));
+				}
+				else if (near.matches()) {
+					tokens.add(new Token(Kind.NEAR, text, null, Integer.parseInt(near.group(1))));
+				}
+				else if (fuzzy.matches() && TextStemmer.listStems(fuzzy.group(1), stemmer).size() == 1) {
+					String word = TextStemmer.listStems(fuzzy.group(1), stemmer).get(0);
+					int distance = fuzzy.group(2).isEmpty() ? Query.Fuzzy.defaultDistance(word)
+							: Math.min(Integer.parseInt(fuzzy.group(2)), Query.Fuzzy.MAX_DISTANCE);
+					tokens.add(new Token(Kind.WORD, word, null, distance));
+				}
+				else {
+					addWords(text, stemmer, tokens, tokens.size());
+				}
+
+				for (int c = 0; c < closing; c++) {
+					tokens.add(new Token(Kind.CLOSE, ")", null, 0));
+				}
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Turns operators without operands next to them back into words. NOT is
+	 * checked from the end, since it may be followed by another NOT.
+	 *
+	 * @param tokens the tokens of the line
+	 * @param stemmer the stemmer to use
+	 */
+	private static void checkOperators(List<Token> tokens, Stemmer stemmer) {
+		for (int i = tokens.size() - 1; i >= 0; i--) {
+			if (tokens.get(i).kind == Kind.NOT && !startsOperand(tokens, i + 1)) {
+				addWords(tokens.remove(i).text, stemmer, tokens, i);
+			}
+		}
+		for (int i = 0; i < tokens.size(); i++) {
+			Kind kind = tokens.get(i).kind;
+			boolean valid = true;
+			if (kind == Kind.AND || kind == Kind.OR) {
+				valid = endsOperand(tokens, i - 1) && startsOperand(tokens, i + 1);
+			}
+			else if (kind == Kind.NEAR) {
+				valid = isKind(tokens, i - 1, Kind.WORD) && isKind(tokens, i + 1, Kind.WORD)
+						&& !isKind(tokens, i - 2, Kind.NEAR);
+			}
+			if (!valid) {
+				addWords(tokens.remove(i).text, stemmer, tokens, i);
+				i--;
+			}
+		}
+	}
+
+	/**
+	 * Adds the stemmed words of the text as word tokens.
+	 *
+	 * @param text the text to stem
+	 * @param stemmer the stemmer to use
+	 * @param tokens the tokens to add to
+	 * @param index where to add the words
+	 */
+	private static void addWords(String text, Stemmer stemmer, List<Token> tokens, int index) {
+		for (String word : TextStemmer.listStems(text, stemmer)) {
+			tokens.add(index++, new Token(Kind.WORD, word, null, 0));
+		}
+	}
+
+	/**
+	 * @param tokens the tokens of the line
+	 * @param i the index of the token to check
+	 * @param kind the kind to check for
+	 * @return true if there is a token of that kind at the index
+	 */
+	private static boolean isKind(List<Token> tokens, int i, Kind kind) {
+		return i >= 0 && i < tokens.size() && tokens.get(i).kind == kind;
+	}
+
+	/**
+	 * @param tokens the tokens of the line
+	 * @param i the index of the token to check
+	 * @return true if the token can start an operand
+	 */
+	private static boolean startsOperand(List<Token> tokens, int i) {
+		return isKind(tokens, i, Kind.WORD) || isKind(tokens, i, Kind.PHRASE)
+				|| isKind(tokens, i, Kind.OPEN) || isKind(tokens, i, Kind.NOT);
+	}
+
+	/**
+	 * @param tokens the tokens of the line
+	 * @param i the index of the token to check
+	 * @return true if the token can end an operand
+	 */
+	private static boolean endsOperand(List<Token> tokens, int i) {
+		return isKind(tokens, i, Kind.WORD) || isKind(tokens, i, Kind.PHRASE) || isKind(tokens, i, Kind.CLOSE);
+	}
+
+	/**
+	 * @return the next token, or null if there are no more tokens
+	 */
+	private Token peek() {
+		return next < tokens.size() ? tokens.get(next) : null;
+	}
+
+	/**
+	 * @param kind the kind to check for
+	 * @return true if the next token is of that kind
+	 */
+	private boolean peekKind(Kind kind) {
+		return isKind(tokens, next, kind);
+	}
+
+	/**
+	 * Parses clauses next to each other or joined by OR, up to the end of the
+	 * line or of the group.
+	 *
+	 * @param depth the number of open parentheses
+	 * @param top true for the whole line, which always gives an OR so plain
+	 *        lines can be searched like before
+	 * @return the parsed clauses, or null if a group has none
+	 */
+	private Query parseSequence(int depth, boolean top) {
+		Query.Or positive = new Query.Or();
+		List<Query> negative = new ArrayList<>();
+		while (peek() != null) {
+			if (peekKind(Kind.CLOSE)) {
+				if (depth > 0) {
+					break;
+				}
+				next++;
+			}
+			else if (peekKind(Kind.OR)) {
+				next++;
+			}
+			else {
+				Query clause = parseAnd(depth);
+				if (clause instanceof Query.Not) {
+					negative.add(clause);
+				}
+				else if (clause != null) {
+					positive.add(clause);
+				}
+			}
+		}
+
+		if (negative.isEmpty()) {
+			return top ? positive : simplify(positive);
+		}
+		Query.And and = new Query.And();
+		if (!positive.isEmpty()) {
+			and.add(simplify(positive));
+		}
+		for (Query clause : negative) {
+			and.add(clause);
+		}
+		return and;
+	}
+
+	/**
+	 * @param or the clauses of a group
+	 * @return the only clause of the group, the group itself if it has more,
+	 *         or null if it has none
+	 */
+	private static Query simplify(Query.Or or) {
+		List<Query> clauses = or.getClauses();
+		if (clauses.isEmpty()) {
+			return null;
+		}
+		return clauses.size() == 1 ? clauses.get(0) : or;
+	}
+
+	/**
+	 * Parses clauses joined by AND.
+	 *
+	 * @param depth the number of open parentheses
+	 * @return the parsed clauses, or null if there are none
+	 */
+	private Query parseAnd(int depth) {
+		Query left = parseNot(depth);
+		while (peekKind(Kind.AND)) {
+			next++;
+			Query right = parseNot(depth);
+			if (left == null) {
+				left = right;
+			}
+			else if (right != null) {
+				Query.And and = new Query.And();
+				and.add(left);
+				and.add(right);
+				left = and;
+			}
+		}
+		return left;
+	}
+
+	/**
+	 * Parses a clause with any number of NOT operators before it.
+	 *
+	 * @param depth the number of open parentheses
+	 * @return the parsed clause, or null if there is none
+	 */
+	private Query parseNot(int depth) {
+		if (peekKind(Kind.NOT)) {
+			next++;
+			Query clause = parseNot(depth);
+			return clause == null ? null : new Query.Not(clause);
+		}
+		return parsePrimary(depth);
+	}
+
+	/**
+	 * Parses a word, a phrase, two words joined by NEAR, or a group in
+	 * parentheses.
+	 *
+	 * @param depth the number of open parentheses
+	 * @return the parsed clause, or null if there is none
+	 */
+	private Query parsePrimary(int depth) {
+		Token token = tokens.get(next++);
+		switch (token.kind) {
+			case OPEN:
+				Query group = parseSequence(depth + 1, false);
+				if (peekKind(Kind.CLOSE)) {
+					next++;
+				}
+				return group;
+			case PHRASE:
+				return new Query.Phrase(token.words);
+			case WORD:
+				if (peekKind(Kind.NEAR)) {
+					Token near = tokens.get(next);
+					Token second = tokens.get(next + 1);
+					next += 2;
+					return new Query.Near(token.text, second.text, near.distance);
+				}
+				return token.distance > 0 ? new Query.Fuzzy(token.text, token.distance) : new Query.Term(token.text);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * The kinds of tokens in a query line
+	 */
+	private enum Kind {
+		/** a stemmed word */
+		WORD,
+		/** a quoted phrase */
+		PHRASE,
+		/** an opening parenthesis */
+		OPEN,
+		/** a closing parenthesis */
+		CLOSE,
+		/** the AND operator */
+		AND,
+		/** the OR operator */
+		OR,
+		/** the NOT operator */
+		NOT,
+		/** the NEAR/n operator */
+		NEAR
+	}
+
+	/**
+	 * A single token of a query line
+	 */
+	private static class Token {
+		/** the kind of token */
+		private final Kind kind;
+		/** the stemmed word, or the text of any other token */
+		private final String text;
+		/** the stemmed words of a phrase */
+		private final List<String> words;
+		/** the distance of a NEAR operator, or the edits allowed in a word */
+		private final int distance;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param kind the kind of token
+		 * @param text the stemmed word, or the text of any other token
+		 * @param words the stemmed words of a phrase
+		 * @param distance the distance of a NEAR operator, or the edits allowed
+		 *        in a word
+		 */
+		public Token(Kind kind, String text, List<String> words, int distance) {
+			this.kind = kind;
+			this.text = text;
+			this.words = words;
+			this.distance = distance;
+		}
+	}
+}
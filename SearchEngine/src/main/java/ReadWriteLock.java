@@ -1,11 +1,18 @@
 import java.util.ConcurrentModificationException;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Maintains a pair of associated locks, one for read-only operations and one
  * for writing. The read lock may be held simultaneously by multiple reader
  * threads, so long as there are no writers. The write lock is exclusive.
  *
+ * The locks are backed by a fair {@link ReentrantReadWriteLock}, so readers
+ * only update a shared counter instead of all entering one monitor, and a
+ * waiting writer is let in before readers that arrive after it, so a crawler
+ * adding to the index is not starved by searches. A thread that holds a lock
+ * may acquire it again, which lets locked methods call each other.
+ *
  * @see SimpleLock
  *
  * @see Lock
@@ -20,23 +27,16 @@ public class ReadWriteLock {
 	private final SimpleLock readerLock;
 	/** The lock used for writing. */
 	private final SimpleLock writerLock;
-	/** The number of active readers. */
-	private int readers;
-	/** The number of active writers; */
-	private int writers;
-	/** The lock object used for synchronized access of readers and writers */
-	private Object lock;
+	/** The lock that keeps track of readers and writers */
+	private final ReentrantReadWriteLock lock;
 
 	/**
 	 * Initializes a new simple read/write lock.
 	 */
 	public ReadWriteLock() {
+		lock = new ReentrantReadWriteLock(true);
 		readerLock = new ReadLock();
 		writerLock = new WriteLock();
-		lock = new Object();
-		
-		readers = 0;
-		writers = 0;
 	}
 
 	/**
@@ -58,14 +58,13 @@ public class ReadWriteLock {
 	}
 
 	/**
-	 * Returns the number of active readers.
+	 * Returns the number of read locks held, counting each time a thread
+	 * acquired it again.
 	 *
 	 * @return the number of active readers
 	 */
 	public int readers() {
-		synchronized (lock) {
-			return readers;
-		}
+		return lock.getReadLockCount();
 	}
 
 	/**
@@ -74,9 +73,7 @@ public class ReadWriteLock {
 	 * @return the number of active writers
 	 */
 	public int writers() {
-		synchronized (lock) {
-			return writers;
-		}
+		return lock.isWriteLocked() ? 1 : 0;
 	}
 
 	/**
@@ -96,44 +93,27 @@ public class ReadWriteLock {
 	private class ReadLock implements SimpleLock {
 
 		/**
-		 * Waits until there are no active writers in the system, then increases the
-		 * number of active readers.
+		 * Waits until there are no active or waiting writers ahead of this
+		 * thread, then increases the number of active readers. A thread that
+		 * already holds a read lock does not wait.
 		 */
 		@Override
 		public void lock() {
-			synchronized (lock) {
-				while (writers > 0) {
-					try {
-						lock.wait();
-					}
-					catch (InterruptedException ex) {
-						Thread.currentThread().interrupt();
-					}
-				}
-
-				assert writers == 0;
-				readers++;
-			}
+			lock.readLock().lock();
 		}
 
 		/**
-		 * Decreases the number of active readers and notifies any waiting threads
-		 * if necessary.
+		 * Decreases the number of active readers and lets in a waiting writer if
+		 * there are no readers left.
 		 *
-		 * @throws IllegalStateException if no readers to unlock
+		 * @throws IllegalStateException if this thread holds no read lock
 		 */
 		@Override
-		public void unlock() throws IllegalStateException {			
-			synchronized (lock) {
-				if (readers == 0) {
-					throw new IllegalStateException();
-				}
-				
-				readers--;
-				if (readers == 0) {
-					lock.notifyAll();
-				}
+		public void unlock() throws IllegalStateException {
+			if (lock.getReadHoldCount() == 0) {
+				throw new IllegalStateException();
 			}
+			lock.readLock().unlock();
 		}
 
 	}
@@ -143,35 +123,18 @@ public class ReadWriteLock {
 	 */
 	private class WriteLock implements SimpleLock {
 
-		/** Keeps track of which thread holds the write lock */
-		private Thread writerThread = null;
-
 		/**
 		 * Waits until there are no active readers or writers in the system. Then,
-		 * increases the number of active writers and tracks which thread holds the
-		 * write lock currently.
+		 * increases the number of active writers.
 		 */
 		@Override
 		public void lock() {
-			synchronized (lock) {
-				while (readers > 0 || writers > 0) {
-					try {
-						lock.wait();
-					}
-					catch (InterruptedException ex) {
-						Thread.currentThread().interrupt();
-					}
-				}
-
-				assert readers == 0 && writers == 0;
-				writerThread = Thread.currentThread();
-				writers++;
-			}
+			lock.writeLock().lock();
 		}
 		
 		/**
-		 * Decreases the number of active writers, resets the thread that holds the
-		 * write lock, and notifies any waiting threads if necessary.
+		 * Decreases the number of active writers and lets in the threads waiting
+		 * after it.
 		 *
 		 * @throws IllegalStateException if no writers to unlock
 		 *
@@ -179,20 +142,14 @@ public class ReadWriteLock {
 		 *         that does not hold the write lock
 		 */
 		@Override
-		public void unlock() throws IllegalStateException, ConcurrentModificationException {			
-			synchronized (lock) {
-				if (writers == 0) {
-					throw new IllegalStateException();
-				}
-				if (!sameThread(writerThread)) {
-					throw new ConcurrentModificationException();
-				}
-				
-				writers--;
-				assert writers == 0;
-				writerThread = null;
-				lock.notifyAll();
+		public void unlock() throws IllegalStateException, ConcurrentModificationException {
+			if (!lock.isWriteLocked()) {
+				throw new IllegalStateException();
+			}
+			if (!lock.isWriteLockedByCurrentThread()) {
+				throw new ConcurrentModificationException();
 			}
+			lock.writeLock().unlock();
 		}
 	}
 }
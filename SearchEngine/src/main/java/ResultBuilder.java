@@ -3,7 +3,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Building the search result
@@ -15,6 +14,8 @@ public class ResultBuilder implements ResultBuilderInterface {
 	final private InvertedIndex index;
 	/** search result instance used to store */
 	final private Map<String, ArrayList<InvertedIndex.SearchResult>> result;
+	/** the scorer used to rank the results */
+	final private Scorer scorer;
 	
 	/**
 	 * Initializes the instance data
@@ -22,8 +23,19 @@ public class ResultBuilder implements ResultBuilderInterface {
 	 * @param index inverted index to use to build the result
 	 */
 	public ResultBuilder(InvertedIndex index) {
+		this(index, Scorer.DEFAULT);
+	}
+	
+	/**
+	 * Initializes the instance data
+	 * 
+	 * @param index inverted index to use to build the result
+	 * @param scorer the scorer used to rank the results
+	 */
+	public ResultBuilder(InvertedIndex index, Scorer scorer) {
 		this.index = index;
 		this.result = new TreeMap<String, ArrayList<InvertedIndex.SearchResult>>();
+		this.scorer = scorer;
 	}
 	
 	/**
@@ -33,11 +45,11 @@ public class ResultBuilder implements ResultBuilderInterface {
 	 * @param exact indicates whether to do an exact search or partial search
 	 */
 	public void addLine(String line, boolean exact) {		
-		TreeSet<String> stems = TextStemmer.uniqueStems(line);
-		String joined = String.join(" ", stems);
+		Query query = QueryParser.parse(line);
+		String joined = query.toString();
 		
-		if (!stems.isEmpty() && !result.containsKey(joined)) {
-			ArrayList<InvertedIndex.SearchResult> entries = index.search(stems, exact);
+		if (!query.isEmpty() && !result.containsKey(joined)) {
+			ArrayList<InvertedIndex.SearchResult> entries = index.search(query, exact, scorer);
 			result.put(joined, entries);
 		}
 	}
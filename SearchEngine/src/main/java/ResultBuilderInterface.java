@@ -28,7 +28,9 @@ public interface ResultBuilderInterface {
 	}
 	
 	/**
-	 * Build a line in the file
+	 * Build a line in the file. The line may use quoted phrases,
+	 * {@code NEAR/n} proximity operators and {@code word~n} fuzzy words as
+	 * described in {@link QueryParser}.
 	 * 
 	 * @param line to build the search result
 	 * @param exact indicates whether to do an exact search or partial search
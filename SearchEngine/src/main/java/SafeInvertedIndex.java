@@ -1,7 +1,9 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Indexing the UNIQUE words that were found in a text file.
@@ -10,7 +12,7 @@ import java.util.Set;
  */
 public class SafeInvertedIndex extends InvertedIndex {
 	/** The lock used to protect concurrent access to the underlying set. */
-	private final ReadWriteLock lock;
+	protected final ReadWriteLock lock;
 
 	/**
 	 * Constructor: creates a new map
@@ -42,6 +44,28 @@ public class SafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	@Override
+	public void add(int document, String word, int position) {
+		lock.writeLock().lock();
+		try {
+			super.add(document, word, position);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public void add(int document, String word, PositionList positions) {
+		lock.writeLock().lock();
+		try {
+			super.add(document, word, positions);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
 	@Override
 	public void addAll(InvertedIndex other) {
 		lock.writeLock().lock();
@@ -53,6 +77,17 @@ public class SafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	@Override
+	public long compress() {
+		lock.writeLock().lock();
+		try {
+			return super.compress();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
 	@Override
 	public int numWords() {
 		lock.readLock().lock();
@@ -130,7 +165,19 @@ public class SafeInvertedIndex extends InvertedIndex {
 		lock.readLock().lock();
 
 		try {
-			return super.getWords();
+			return Collections.unmodifiableSet(new TreeSet<>(super.getWords()));
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public Completions getCompletions(int limit) {
+		lock.readLock().lock();
+
+		try {
+			return super.getCompletions(limit);
 		}
 		finally {
 			lock.readLock().unlock();
@@ -154,7 +201,7 @@ public class SafeInvertedIndex extends InvertedIndex {
 		lock.readLock().lock();
 
 		try {
-			return super.getPositions(word, location);
+			return Collections.unmodifiableSet(new TreeSet<>(super.getPositions(word, location)));
 		}
 		finally {
 			lock.readLock().unlock();
@@ -173,6 +220,18 @@ public class SafeInvertedIndex extends InvertedIndex {
 		}
 	}
 	
+	@Override
+	public long getTotalCount() {
+		lock.readLock().lock();
+
+		try {
+			return super.getTotalCount();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
 	@Override
 	public ArrayList<SearchResult> exactSearch(Set<String> queries) {
 		lock.readLock().lock();
@@ -196,6 +255,54 @@ public class SafeInvertedIndex extends InvertedIndex {
 			lock.readLock().unlock();
 		}
 	}
+	
+	@Override
+	public ArrayList<SearchResult> exactSearch(Set<String> queries, int k) {
+		lock.readLock().lock();
+		
+		try {
+			return super.exactSearch(queries, k);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public ArrayList<SearchResult> partialSearch(Set<String> queries, int k) {
+		lock.readLock().lock();
+		
+		try {
+			return super.partialSearch(queries, k);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public ArrayList<SearchResult> search(Query query, boolean exact, Scorer scorer) {
+		lock.readLock().lock();
+		
+		try {
+			return super.search(query, exact, scorer);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public ArrayList<SearchResult> search(Query query, boolean exact, int k, Scorer scorer) {
+		lock.readLock().lock();
+		
+		try {
+			return super.search(query, exact, k, scorer);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
 
 	@Override
 	public String toString() {
@@ -221,6 +328,25 @@ public class SafeInvertedIndex extends InvertedIndex {
 		};
 	}
 	
+	@Override
+	public void toBinary(Path file) throws IOException {
+		lock.readLock().lock();
+
+		try {
+			super.toBinary(file);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void fromBinary(Path file) throws IOException {
+		InvertedIndex local = new InvertedIndex(getDocuments());
+		local.fromBinary(file);
+		addAll(local);
+	}
+	
 	@Override
 	public void toJsonCount(Path file) throws IOException {
 		lock.readLock().lock();
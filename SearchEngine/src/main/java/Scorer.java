@@ -0,0 +1,73 @@
+/**
+ * Scores how well a document matches the words of a query. Every matched word
+ * gets a score from how often it appears in the document, how long the
+ * document is, and a weight that depends on how many documents contain the
+ * word. A document's score is then built from the scores of its words.
+ *
+ * Top-k searches use the largest score a word can give to skip documents, so
+ * {@link #total(double, double, int)} must never be larger than the sum of the
+ * word scores, apart from rounding. Words found by a fuzzy query have their
+ * scores and matches multiplied by a boost below 1 before they are added up.
+ *
+ * @author tiffanyz
+ */
+public interface Scorer {
+	/** Scores by the number of matches divided by the word count of the document */
+	public static final Scorer COUNT = new CountScorer();
+	/** Scores with Okapi BM25 */
+	public static final Scorer BM25 = new BM25Scorer();
+	/** The scorer used when none is given */
+	public static final Scorer DEFAULT = COUNT;
+
+	/**
+	 * Returns the weight of a word, which is computed once per word and query.
+	 *
+	 * @param documentFrequency the number of documents that contain the word
+	 * @param numDocuments the number of documents in the index
+	 * @return the weight of the word
+	 */
+	public double weight(int documentFrequency, int numDocuments);
+
+	/**
+	 * Returns the score of a word in a document.
+	 *
+	 * @param frequency the number of times the word matches the document
+	 * @param weight the weight of the word
+	 * @param length the word count of the document
+	 * @param averageLength the average word count of the documents in the index
+	 * @return the score of the word in the document
+	 */
+	public double score(int frequency, double weight, int length, double averageLength);
+
+	/**
+	 * Returns the score of a document. By default this is the sum of the scores
+	 * of the matched words.
+	 *
+	 * @param count the total number of matches in the document, each multiplied
+	 *        by the boost of its word
+	 * @param sum the sum of the scores of the matched words
+	 * @param length the word count of the document
+	 * @return the score of the document
+	 */
+	public default double total(double count, double sum, int length) {
+		return sum;
+	}
+
+	/**
+	 * Looks up a scorer by name, which is either "count" or "bm25".
+	 *
+	 * @param name the name of the scorer, ignoring case
+	 * @return the scorer with that name
+	 * @throws IllegalArgumentException if there is no scorer with that name
+	 */
+	public static Scorer forName(String name) {
+		switch (name.toLowerCase()) {
+			case "count":
+				return COUNT;
+			case "bm25":
+				return BM25;
+			default:
+				throw new IllegalArgumentException("Unknown scorer: " + name);
+		}
+	}
+}
@@ -2,6 +2,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 
@@ -14,22 +15,49 @@ public class SearchEngine {
 	 * Sets up a Jetty server with different servlet instances.
 	 * 
 	 * @param index the thread safe inverted index to build
-	 * @param resultBuilder the result build used to build the search result
 	 * @param port the port to run this server
 	 * 
 	 * @throws Exception if unable to start and run server
 	 */
 	public static void build(SafeInvertedIndex index, int port) throws Exception {
-		Server server = new Server(port);
+		build(index, port, false);
+	}
+	
+	/**
+	 * Sets up a Jetty server with different servlet instances, which may handle
+	 * every request on a new virtual thread.
+	 * 
+	 * @param index the thread safe inverted index to build
+	 * @param port the port to run this server
+	 * @param virtual whether to handle every request on a new virtual thread
+	 * 
+	 * @throws Exception if unable to start and run server
+	 * 
+	 * @see VirtualThreadPool
+	 */
+	public static void build(SafeInvertedIndex index, int port, boolean virtual) throws Exception {
+		Server server;
+		if (virtual) {
+			server = new Server(new VirtualThreadPool());
+			ServerConnector connector = new ServerConnector(server);
+			connector.setPort(port);
+			server.addConnector(connector);
+		}
+		else {
+			server = new Server(port);
+		}
 		ServletHandler handler = new ServletHandler();
 		Map<String, ArrayList<String>> history = new HashMap<>();
 		Map<String, ArrayList<String>> favorites = new HashMap<>();
 		
-		handler.addServletWithMapping(new ServletHolder(new SearchServlet(index, history, favorites)), "/search");
+		QueryCache cache = new QueryCache(index, QueryCache.DEFAULT_CAPACITY);
+		
+		handler.addServletWithMapping(new ServletHolder(new SearchServlet(cache, history, favorites)), "/search");
 		handler.addServletWithMapping(new ServletHolder(new ResultServlet(history)), "/result");
 		handler.addServletWithMapping(new ServletHolder(new FavoritesServlet(favorites)), "/favorites");
 		handler.addServletWithMapping(new ServletHolder(new IndexServlet(index)), "/index");
 		handler.addServletWithMapping(new ServletHolder(new LocationServlet(index)), "/location");
+		handler.addServletWithMapping(new ServletHolder(new SuggestServlet(index)), "/suggest");
 
 		server.setHandler(handler);
 		server.start();
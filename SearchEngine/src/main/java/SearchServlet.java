@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -32,6 +33,8 @@ public class SearchServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 	/** The title to use for this webpage. */
 	private static final String TITLE = "Searching";
+	/** The maximum number of links shown for a query, best first. */
+	private static final int MAX_RESULTS = 50;
 	/** The logger to use for this servlet. */
 	private static Logger log = Log.getRootLogger();
 	/** The thread-safe data structure to use for storing messages. */
@@ -44,12 +47,14 @@ public class SearchServlet extends HttpServlet {
 	private final String textTemplate;
 	/** A list storing the user entered queries */
 	private final Map<String, ArrayList<String>> entered;
+	/** The entered queries that found more results than are shown, guarded by the entered queries */
+	private final Set<String> truncated;
 	/** A list storing the results history */
 	private final Map<String, ArrayList<String>> history;
 	/** A list storing all the saved results */
 	private final Map<String, ArrayList<String>> favorites;
-	/** The thread-safe inverted index to search on */
-	private final SafeInvertedIndex index;
+	/** The cache of recent searches of the thread-safe inverted index */
+	private final QueryCache cache;
 	/** The query entered by user */
 	private String query;
 
@@ -57,12 +62,12 @@ public class SearchServlet extends HttpServlet {
 	 * Initializes this message board. Each message board has its own collection
 	 * of messages.
 	 * 
-	 * @param index the thread-safe inverted index to search on
+	 * @param cache the cache of recent searches of the index to search on
 	 * @param history a list storing the results history
 	 * @param favorites a list storing all the saved results
 	 * @throws IOException if unable to read templates
 	 */
-	public SearchServlet(SafeInvertedIndex index, Map<String, ArrayList<String>> history, Map<String, ArrayList<String>> favorites) throws IOException {
+	public SearchServlet(QueryCache cache, Map<String, ArrayList<String>> history, Map<String, ArrayList<String>> favorites) throws IOException {
 		super();
 		input = null;
 		headTemplate = Files.readString(Path.of("html/search-head.html"), StandardCharsets.UTF_8);
@@ -70,9 +75,10 @@ public class SearchServlet extends HttpServlet {
 		textTemplate = Files.readString(Path.of("html/search-text.html"), StandardCharsets.UTF_8);
 		
 		this.entered = new HashMap<>();
+		this.truncated = new HashSet<>();
 		this.history = history;
 		this.favorites = favorites;
-		this.index = index;
+		this.cache = cache;
 		this.query = null;
 	}
 
@@ -106,8 +112,10 @@ public class SearchServlet extends HttpServlet {
 			out.println("    <ul>");
 			
 			ArrayList<String> links = null;
+			boolean more = false;
 			synchronized (entered) {
 				links = entered.get(query);
+				more = truncated.contains(query);
 			}
 			if (links != null) {
 				if (links.size() == 0) {
@@ -121,6 +129,9 @@ public class SearchServlet extends HttpServlet {
 			}
 			
 			out.println("    </ul>");
+			if (more) {
+				out.println("    <p>Only the best " + MAX_RESULTS + " results are shown.</p>");
+			}
 		}
 
 		out.println(foot);
@@ -139,37 +150,58 @@ public class SearchServlet extends HttpServlet {
 		String reverse = request.getParameter("reverse");
 		String save = request.getParameter("favorite");
 		String priv = request.getParameter("private");
+		String ranking = request.getParameter("scorer");
 		
 		boolean exact = false;
+		boolean fuzzy = false;
 		if (searchType.equals("exact")) {
 			exact = true;
 		}
+		else if (searchType.equals("fuzzy")) {
+			exact = true;
+			fuzzy = true;
+		}
 		message = message == null ? "" : message;
+		
+		Scorer scorer = Scorer.DEFAULT;
+		if (ranking != null) {
+			try {
+				scorer = Scorer.forName(ranking);
+			}
+			catch (IllegalArgumentException e) {
+				log.warn("Unknown scorer " + ranking + ", using the default.");
+			}
+		}
 
 		Set<String> queries = new TreeSet<>();
 		ArrayList<SafeInvertedIndex.SearchResult> results = new ArrayList<>();
 		ArrayList<String> links = new ArrayList<>();
 		
-		TreeSet<String> stems = TextStemmer.uniqueStems(message);
-		query = String.join(" ", stems);
+		Query parsed = QueryParser.parse(message, fuzzy);
+		query = parsed.toString();
 		queries.add(query);
 		
-		if (!stems.isEmpty()) {
-			results = index.search(stems, exact);
+		// asks for one more result than is shown to tell whether there are more
+		if (!parsed.isEmpty()) {
+			results = cache.search(parsed, exact, MAX_RESULTS + 1, scorer);
+			log.debug("Query cache: {}", cache);
 		}
 		
-		for (SafeInvertedIndex.SearchResult result : results) {
-			links.add(result.getPath());
+		for (int i = 0; i < Math.min(results.size(), MAX_RESULTS); i++) {
+			links.add(results.get(i).getPath());
 		}
 		
 		if (reverse != null && reverse.equals("reverse")) {
-			Collections.sort(links, Collections.reverseOrder());;
-		}
-		else {
-			Collections.sort(links);
+			Collections.reverse(links);
 		}
 		synchronized (entered) {
 			entered.put(query, links);
+			if (results.size() > MAX_RESULTS) {
+				truncated.add(query);
+			}
+			else {
+				truncated.remove(query);
+			}
 		}
 		
 		if (priv == null || !priv.equals("private")) {
@@ -0,0 +1,444 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread-safe inverted index made of immutable segments. Each call to
+ * {@link #addAll(InvertedIndex)} seals the other index into a new segment
+ * instead of merging it into one big map, so indexing threads do not wait on
+ * each other. Searches fan out across the live segments.
+ *
+ * Segments are merged in the background using a tiered policy: a segment is in
+ * tier {@code n} if it holds fewer than {@code mergeFactor^(n+1)} positions,
+ * and whenever {@code mergeFactor} segments are in the same tier they are
+ * merged into one. Segments that reach the maximum segment size are no longer
+ * merged. Words added one at a time with {@link #add(String, String, int)} are
+ * kept in this index's own map, protected by the read/write lock as before.
+ * New segments are published under the write lock, so a search never caches
+ * score bounds worked out from segments that have since been replaced.
+ *
+ * @author tiffanyz
+ */
+public class SegmentedInvertedIndex extends SafeInvertedIndex {
+	/** Logger to use for this class. */
+	private static final Logger log = LogManager.getRootLogger();
+	/** the work queue used to merge segments in the background */
+	private final WorkQueue merges;
+	/** the number of segments in one tier that triggers a merge */
+	private final int mergeFactor;
+	/** segments with at least this many positions are no longer merged */
+	private final long maxSegmentSize;
+	/** the live segments, replaced as a whole whenever a segment is added or merged */
+	private volatile List<InvertedIndex> segments;
+	/** the segments currently being merged, guarded by this set */
+	private final Set<InvertedIndex> merging;
+	/** the number of merges finished */
+	private int mergeCount;
+	/** the number of positions written by finished merges */
+	private long mergedPositions;
+	/** the time spent by finished merges in nanoseconds */
+	private long mergeNanos;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param merges the work queue used to merge segments in the background
+	 * @param mergeFactor the number of segments in one tier that triggers a merge
+	 * @param maxSegmentSize segments with at least this many positions are no
+	 *        longer merged
+	 */
+	public SegmentedInvertedIndex(WorkQueue merges, int mergeFactor, long maxSegmentSize) {
+		super();
+		if (mergeFactor < 2) {
+			throw new IllegalArgumentException("Merge factor must be at least 2: " + mergeFactor);
+		}
+		this.merges = merges;
+		this.mergeFactor = mergeFactor;
+		this.maxSegmentSize = maxSegmentSize;
+		this.segments = List.of();
+		this.merging = new HashSet<>();
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		InvertedIndex segment = new InvertedIndex(getDocuments());
+		segment.addAll(other);
+		segment.compress();
+		getSurfaceForms().addAll(other.getSurfaceForms());
+
+		lock.writeLock().lock();
+
+		try {
+			synchronized (merging) {
+				List<InvertedIndex> updated = new ArrayList<>(segments);
+				updated.add(segment);
+				segments = List.copyOf(updated);
+			}
+			indexChanged();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		scheduleMerges();
+	}
+
+	/**
+	 * Starts a background merge for every tier that has enough segments which
+	 * are not already being merged.
+	 */
+	private void scheduleMerges() {
+		synchronized (merging) {
+			Map<InvertedIndex, Long> sizes = new HashMap<>();
+			for (InvertedIndex segment : segments) {
+				long size = segment.getTotalCount();
+				if (!merging.contains(segment) && size < maxSegmentSize) {
+					sizes.put(segment, size);
+				}
+			}
+			List<InvertedIndex> candidates = new ArrayList<>(sizes.keySet());
+			candidates.sort(Comparator.comparing(sizes::get));
+
+			int start = 0;
+			while (start < candidates.size()) {
+				int tier = tier(sizes.get(candidates.get(start)));
+				int end = start;
+				while (end < candidates.size() && tier(sizes.get(candidates.get(end))) == tier) {
+					end++;
+				}
+				for (int i = start; i + mergeFactor <= end; i += mergeFactor) {
+					List<InvertedIndex> group = List.copyOf(candidates.subList(i, i + mergeFactor));
+					merging.addAll(group);
+					merges.execute(new MergeTask(group));
+				}
+				start = end;
+			}
+		}
+	}
+
+	/**
+	 * @param size the number of positions in a segment
+	 * @return the tier of a segment of that size
+	 */
+	private int tier(long size) {
+		int tier = 0;
+		for (long bound = mergeFactor; size >= bound && bound <= Long.MAX_VALUE / mergeFactor; bound *= mergeFactor) {
+			tier++;
+		}
+		return tier;
+	}
+
+	/**
+	 * Waits for all pending merges to finish.
+	 */
+	public void finishMerges() {
+		merges.finish();
+	}
+
+	/**
+	 * @return the number of live segments
+	 */
+	public int numSegments() {
+		return segments.size();
+	}
+
+	/**
+	 * @return the number of merges finished
+	 */
+	public int getMergeCount() {
+		synchronized (merging) {
+			return mergeCount;
+		}
+	}
+
+	/**
+	 * @return the number of positions written by finished merges
+	 */
+	public long getMergedPositions() {
+		synchronized (merging) {
+			return mergedPositions;
+		}
+	}
+
+	/**
+	 * @return the number of positions merged per second by finished merges
+	 */
+	public double getMergeThroughput() {
+		synchronized (merging) {
+			return mergeNanos == 0 ? 0.0 : mergedPositions * 1e9 / mergeNanos;
+		}
+	}
+
+	/**
+	 * Returns this index followed by the live segments. The caller must hold the
+	 * read lock while using this index's own map.
+	 */
+	@Override
+	protected List<InvertedIndex> getParts() {
+		List<InvertedIndex> parts = new ArrayList<>();
+		parts.add(this);
+		parts.addAll(segments);
+		return parts;
+	}
+
+	/**
+	 * Returns the word count from the first part that contains the document,
+	 * matching how {@link InvertedIndex#addAll(InvertedIndex)} merges counts.
+	 */
+	@Override
+	protected int getCount(int document) {
+		int count = super.getCount(document);
+		if (count > 0) {
+			return count;
+		}
+		for (InvertedIndex segment : segments) {
+			count = segment.getCount(document);
+			if (count > 0) {
+				return count;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Merges the live segments and this index's own map into a single index.
+	 * The caller must hold the read lock.
+	 *
+	 * @return a new index with the contents of every part
+	 */
+	private InvertedIndex snapshot() {
+		InvertedIndex merged = new InvertedIndex(getDocuments());
+		for (InvertedIndex part : getParts()) {
+			merged.addAll(part);
+		}
+		return merged;
+	}
+
+	@Override
+	public long compress() {
+		long bytes = super.compress();
+		for (InvertedIndex segment : segments) {
+			bytes += segment.compress();
+		}
+		return bytes;
+	}
+
+	@Override
+	public int numWords() {
+		return getWords().size();
+	}
+
+	@Override
+	public int numLocations(String word) {
+		return getLocations(word).size();
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		return getPositions(word, location).size();
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		if (super.hasWord(word)) {
+			return true;
+		}
+		for (InvertedIndex segment : segments) {
+			if (segment.hasWord(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasLocation(String word, String location) {
+		if (super.hasLocation(word, location)) {
+			return true;
+		}
+		for (InvertedIndex segment : segments) {
+			if (segment.hasLocation(word, location)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean hasPosition(String word, String location, int position) {
+		if (super.hasPosition(word, location, position)) {
+			return true;
+		}
+		for (InvertedIndex segment : segments) {
+			if (segment.hasPosition(word, location, position)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Set<String> getWords() {
+		TreeSet<String> words = new TreeSet<>(super.getWords());
+		for (InvertedIndex segment : segments) {
+			words.addAll(segment.getWords());
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		TreeSet<String> locations = new TreeSet<>(super.getLocations(word));
+		for (InvertedIndex segment : segments) {
+			locations.addAll(segment.getLocations(word));
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		TreeSet<Integer> positions = new TreeSet<>(super.getPositions(word, location));
+		for (InvertedIndex segment : segments) {
+			positions.addAll(segment.getPositions(word, location));
+		}
+		return Collections.unmodifiableSet(positions);
+	}
+
+	@Override
+	public Set<String> getCountsLocations() {
+		TreeSet<String> locations = new TreeSet<>(super.getCountsLocations());
+		for (InvertedIndex segment : segments) {
+			locations.addAll(segment.getCountsLocations());
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	/**
+	 * Adds up the word counts of this index's own map and of every segment,
+	 * since each document is added to only one of them.
+	 */
+	@Override
+	public long getTotalCount() {
+		lock.readLock().lock();
+
+		try {
+			long total = super.getTotalCount();
+			for (InvertedIndex segment : segments) {
+				total += segment.getTotalCount();
+			}
+			return total;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		lock.readLock().lock();
+
+		try {
+			return snapshot().toString();
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void toJsonIndex(Path file) throws IOException {
+		lock.readLock().lock();
+
+		try {
+			snapshot().toJsonIndex(file);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void toJsonCount(Path file) throws IOException {
+		lock.readLock().lock();
+
+		try {
+			snapshot().toJsonCount(file);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void toBinary(Path file) throws IOException {
+		lock.readLock().lock();
+
+		try {
+			snapshot().toBinary(file);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges a group of segments into one and replaces them in the live segments
+	 */
+	public class MergeTask implements Runnable {
+		/** the segments to merge */
+		private final List<InvertedIndex> group;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param group the segments to merge
+		 */
+		public MergeTask(List<InvertedIndex> group) {
+			this.group = group;
+			log.debug("Merge task for {} segments created.", group.size());
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			InvertedIndex merged = new InvertedIndex(getDocuments());
+			for (InvertedIndex segment : group) {
+				merged.addAll(segment);
+			}
+			merged.compress();
+			long elapsed = System.nanoTime() - start;
+
+			lock.writeLock().lock();
+
+			try {
+				synchronized (merging) {
+					List<InvertedIndex> updated = new ArrayList<>(segments);
+					updated.removeAll(group);
+					updated.add(merged);
+					segments = List.copyOf(updated);
+					merging.removeAll(group);
+
+					mergeCount++;
+					mergedPositions += merged.getTotalCount();
+					mergeNanos += elapsed;
+				}
+				indexChanged();
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+			log.debug("Merged {} segments into one with {} positions.", group.size(), merged.getTotalCount());
+			scheduleMerges();
+		}
+	}
+}
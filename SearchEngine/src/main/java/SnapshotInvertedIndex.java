@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * A thread-safe inverted index whose readers never wait for writers. Words are
+ * added to this index under the read/write lock inherited from
+ * {@link SafeInvertedIndex}, while searches and lookups read an immutable copy
+ * of the index, called a snapshot, without taking any lock. Every so many
+ * documents or indexes added, the writer copies the index into a new snapshot
+ * and publishes it by replacing the old one, so a reader sees either the old
+ * or the new version but never a change in progress.
+ *
+ * Copying takes longer as the index grows, so a snapshot is also only
+ * published once the writer has spent {@link #COPY_RATIO} times as long since
+ * the last one as that copy took. Copying then takes at most a fraction of the
+ * time spent adding words, however large the index becomes, instead of growing
+ * with the square of its size.
+ *
+ * A snapshot shares the position lists of this index, so this index never
+ * changes a position list once it is stored: positions added to a document
+ * that already has some replace its list with a merged copy, and compressing
+ * replaces each list with a compressed copy. Writing the index, word counts or
+ * binary file reads this index under the lock, so they include everything
+ * added even before it is published.
+ *
+ * @author tiffanyz
+ */
+public class SnapshotInvertedIndex extends SafeInvertedIndex {
+	/** The number of changes between snapshots used by default */
+	public static final int DEFAULT_INTERVAL = 10;
+	/** How many times longer than the last copy to wait before copying again */
+	public static final int COPY_RATIO = 9;
+	/** the least number of documents or indexes added between snapshots */
+	private final int interval;
+	/** the number of documents or indexes added since the last snapshot, guarded by the lock */
+	private int changes;
+	/** the latest published snapshot, which is never changed */
+	private volatile InvertedIndex snapshot;
+	/** the number of snapshots published */
+	private volatile long published;
+	/** when the last snapshot was published, in nanoseconds, guarded by the lock */
+	private long publishedAt;
+	/** how long the last snapshot took to copy, in nanoseconds, guarded by the lock */
+	private long copyNanos;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param interval the least number of documents or indexes added between
+	 *        snapshots
+	 */
+	public SnapshotInvertedIndex(int interval) {
+		super();
+		if (interval < 1) {
+			throw new IllegalArgumentException("Snapshot interval must be at least 1: " + interval);
+		}
+		this.interval = interval;
+		this.changes = 0;
+		this.snapshot = new InvertedIndex(getDocuments());
+		this.published = 0;
+		this.publishedAt = System.nanoTime();
+		this.copyNanos = 0;
+	}
+
+	/**
+	 * Copies the index into a new snapshot and publishes it, so every search
+	 * that starts afterwards sees everything added so far.
+	 */
+	public void publish() {
+		lock.writeLock().lock();
+		try {
+			long start = System.nanoTime();
+			InvertedIndex next = new InvertedIndex(getDocuments());
+			next.addAll(this);
+			snapshot = next;
+			published++;
+			changes = 0;
+			publishedAt = System.nanoTime();
+			copyNanos = publishedAt - start;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts a document or index added, and publishes a new snapshot once
+	 * enough have been added and enough time has passed since the last copy.
+	 * The caller must hold the write lock.
+	 */
+	private void changed() {
+		if (++changes >= interval && System.nanoTime() - publishedAt >= COPY_RATIO * copyNanos) {
+			publish();
+		}
+	}
+
+	/**
+	 * @return the number of snapshots published
+	 */
+	public long numSnapshots() {
+		return published;
+	}
+
+	/**
+	 * Returns the number of snapshots published, which only changes when
+	 * searches start to see the words added.
+	 */
+	@Override
+	public long getVersion() {
+		return published;
+	}
+
+	@Override
+	public void add(String location, ArrayList<String> words) {
+		InvertedIndex local = new InvertedIndex(getDocuments());
+		local.add(location, words);
+		lock.writeLock().lock();
+		try {
+			for (var entry : local.getEntries()) {
+				Postings postings = entry.getValue();
+				for (int i = 0; i < postings.size(); i++) {
+					super.add(postings.document(i), entry.getKey(), postings.positions(i));
+				}
+			}
+			changed();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void add(String location, String word, int position) {
+		add(getDocuments().add(location), word, position);
+	}
+
+	@Override
+	public void add(int document, String word, int position) {
+		PositionList positions = new PositionList();
+		positions.add(position + 1);
+		add(document, word, positions);
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		lock.writeLock().lock();
+		try {
+			super.addAll(other);
+			changed();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds the contents of the file and publishes them in a single snapshot.
+	 */
+	@Override
+	public void fromBinary(Path file) throws IOException {
+		lock.writeLock().lock();
+		try {
+			super.fromBinary(file);
+			publish();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replaces every position list with a compressed copy and publishes the
+	 * compressed lists in a new snapshot.
+	 */
+	@Override
+	public long compress() {
+		lock.writeLock().lock();
+		try {
+			long bytes = 0;
+			for (var entry : getEntries()) {
+				Postings postings = entry.getValue();
+				for (int i = 0; i < postings.size(); i++) {
+					PositionList positions = postings.positions(i);
+					if (!positions.isFrozen()) {
+						positions = new PositionList(positions.encode(), positions.size());
+						postings.put(postings.document(i), positions);
+					}
+					bytes += positions.freeze();
+				}
+			}
+			publish();
+			return bytes;
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public int numWords() {
+		return snapshot.numWords();
+	}
+
+	@Override
+	public int numLocations(String word) {
+		return snapshot.numLocations(word);
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		return snapshot.numPositions(word, location);
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		return snapshot.hasWord(word);
+	}
+
+	@Override
+	public boolean hasLocation(String word, String location) {
+		return snapshot.hasLocation(word, location);
+	}
+
+	@Override
+	public boolean hasPosition(String word, String location, int position) {
+		return snapshot.hasPosition(word, location, position);
+	}
+
+	@Override
+	public Set<String> getWords() {
+		return snapshot.getWords();
+	}
+
+	@Override
+	public Completions getCompletions(int limit) {
+		return snapshot.getCompletions(limit);
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		return snapshot.getLocations(word);
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		return snapshot.getPositions(word, location);
+	}
+
+	@Override
+	public Set<String> getCountsLocations() {
+		return snapshot.getCountsLocations();
+	}
+
+	@Override
+	public int getCount(String location) {
+		return snapshot.getCount(location);
+	}
+
+	@Override
+	public long getTotalCount() {
+		return snapshot.getTotalCount();
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(Set<String> queries) {
+		return snapshot.exactSearch(queries);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(Set<String> queries) {
+		return snapshot.partialSearch(queries);
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(Set<String> queries, int k) {
+		return snapshot.exactSearch(queries, k);
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(Set<String> queries, int k) {
+		return snapshot.partialSearch(queries, k);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(Query query, boolean exact, Scorer scorer) {
+		return snapshot.search(query, exact, scorer);
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(Query query, boolean exact, int k, Scorer scorer) {
+		return snapshot.search(query, exact, k, scorer);
+	}
+}
@@ -0,0 +1,430 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe inverted index that splits its words into stripes by their
+ * hash. Each stripe is an index of its own with its own read/write lock, so
+ * indexing threads that call {@link #addAll(InvertedIndex)} at the same time
+ * merge into different stripes in parallel, and a search of plain words only
+ * locks the stripes those words live in. Partial, fuzzy and other queries lock
+ * every stripe for reading.
+ *
+ * The word counts of the documents are kept in this index's own counts,
+ * protected by the read/write lock inherited from {@link SafeInvertedIndex},
+ * and this index's own map stays empty. Locks are always taken in the same
+ * order, the stripes first in increasing order and then the inherited lock,
+ * and writers never wait for a stripe while holding the inherited lock.
+ *
+ * @author tiffanyz
+ */
+public class StripedInvertedIndex extends SafeInvertedIndex {
+	/** The number of stripes used by default */
+	public static final int DEFAULT_STRIPES = 16;
+	/** the stripes, each holding the words that hash to it */
+	private final InvertedIndex[] stripes;
+	/** the lock of each stripe, parallel to {@link #stripes} */
+	private final ReadWriteLock[] locks;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param stripes the number of stripes to split the words into
+	 */
+	public StripedInvertedIndex(int stripes) {
+		super();
+		if (stripes < 1) {
+			throw new IllegalArgumentException("There must be at least one stripe: " + stripes);
+		}
+		this.stripes = new InvertedIndex[stripes];
+		this.locks = new ReadWriteLock[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new InvertedIndex(getDocuments());
+			this.locks[i] = new ReadWriteLock();
+		}
+	}
+
+	/**
+	 * @return the number of stripes
+	 */
+	public int numStripes() {
+		return stripes.length;
+	}
+
+	/**
+	 * @param word the word to look up
+	 * @return the index of the stripe that holds the word
+	 */
+	private int stripeOf(String word) {
+		int hash = word.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16), stripes.length);
+	}
+
+	/**
+	 * Adds the postings of the other index to the stripes one at a time,
+	 * starting from a random stripe so threads adding at the same time spread
+	 * out over the stripes instead of queuing on the first one. The word counts
+	 * are added first, so a search never finds a document without its count.
+	 */
+	@Override
+	public void addAll(InvertedIndex other) {
+		int[] remap = mapDocuments(other);
+		List<List<Map.Entry<String, Postings>>> parts = new ArrayList<>();
+		for (int i = 0; i < stripes.length; i++) {
+			parts.add(new ArrayList<>());
+		}
+		for (var entry : other.getEntries()) {
+			parts.get(stripeOf(entry.getKey())).add(entry);
+		}
+
+		lock.writeLock().lock();
+		try {
+			addCounts(other, remap);
+			getSurfaceForms().addAll(other.getSurfaceForms());
+			indexChanged();
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+
+		int start = ThreadLocalRandom.current().nextInt(stripes.length);
+		for (int n = 0; n < stripes.length; n++) {
+			int i = (start + n) % stripes.length;
+			if (!parts.get(i).isEmpty()) {
+				locks[i].writeLock().lock();
+				try {
+					stripes[i].addPostings(parts.get(i), remap);
+					indexChanged();
+				}
+				finally {
+					locks[i].writeLock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the words to a new index first, which is then added with
+	 * {@link #addAll(InvertedIndex)}.
+	 */
+	@Override
+	public void add(String location, ArrayList<String> words) {
+		InvertedIndex local = new InvertedIndex(getDocuments());
+		local.add(location, words);
+		addAll(local);
+	}
+
+	@Override
+	public void add(String location, String word, int position) {
+		add(getDocuments().add(location), word, position);
+	}
+
+	@Override
+	public void add(int document, String word, int position) {
+		PositionList positions = new PositionList();
+		positions.add(position + 1);
+		add(document, word, positions);
+	}
+
+	@Override
+	public void add(int document, String word, PositionList positions) {
+		int stripe = stripeOf(word);
+		locks[stripe].writeLock().lock();
+		try {
+			int added = stripes[stripe].addPositions(document, word, positions);
+			lock.writeLock().lock();
+			try {
+				addCount(document, added);
+				indexChanged();
+			}
+			finally {
+				lock.writeLock().unlock();
+			}
+		}
+		finally {
+			locks[stripe].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds the contents of the file one word at a time, without holding the
+	 * inherited lock while waiting for the stripes. The whole file is checked
+	 * before the first word is added, so an invalid file adds nothing.
+	 */
+	@Override
+	public void fromBinary(Path file) throws IOException {
+		BinaryIndex.read(file, this);
+	}
+
+	@Override
+	public long compress() {
+		long bytes = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				bytes += stripes[i].compress();
+			}
+			finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Runs an action while holding the read lock of the word's stripe.
+	 *
+	 * @param <T> the type of the result
+	 * @param word the word the action looks up
+	 * @param action the action to run on the word's stripe
+	 * @return the result of the action
+	 */
+	private <T> T readStripe(String word, Supplier<T> action) {
+		int stripe = stripeOf(word);
+		locks[stripe].readLock().lock();
+		try {
+			return action.get();
+		}
+		finally {
+			locks[stripe].readLock().unlock();
+		}
+	}
+
+	/**
+	 * Runs an action while holding the read locks of the given stripes and the
+	 * inherited read lock.
+	 *
+	 * @param <T> the type of the result
+	 * @param needed whether the action reads each stripe
+	 * @param action the action to run
+	 * @return the result of the action
+	 */
+	private <T> T read(boolean[] needed, Supplier<T> action) {
+		int locked = 0;
+		try {
+			while (locked < stripes.length) {
+				if (needed[locked]) {
+					locks[locked].readLock().lock();
+				}
+				locked++;
+			}
+			lock.readLock().lock();
+			try {
+				return action.get();
+			}
+			finally {
+				lock.readLock().unlock();
+			}
+		}
+		finally {
+			while (locked > 0) {
+				locked--;
+				if (needed[locked]) {
+					locks[locked].readLock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a flag for every stripe, all set
+	 */
+	private boolean[] allStripes() {
+		boolean[] needed = new boolean[stripes.length];
+		Arrays.fill(needed, true);
+		return needed;
+	}
+
+	/**
+	 * Works out which stripes a search has to read. Only an exact search of
+	 * plain words can tell which stripes its words live in.
+	 *
+	 * @param words the plain words searched for with the number of edits
+	 *        allowed for each, or null if the query has other clauses
+	 * @param exact indicating whether or not to do a exact search
+	 * @return whether the search reads each stripe
+	 */
+	private boolean[] stripesOf(Map<String, Integer> words, boolean exact) {
+		if (words == null || !exact) {
+			return allStripes();
+		}
+		boolean[] needed = new boolean[stripes.length];
+		for (var word : words.entrySet()) {
+			if (word.getValue() > 0) {
+				return allStripes();
+			}
+			needed[stripeOf(word.getKey())] = true;
+		}
+		return needed;
+	}
+
+	/**
+	 * @param queries the plain words searched for
+	 * @param exact indicating whether or not to do a exact search
+	 * @return whether the search reads each stripe
+	 */
+	private boolean[] stripesOf(Set<String> queries, boolean exact) {
+		if (!exact) {
+			return allStripes();
+		}
+		boolean[] needed = new boolean[stripes.length];
+		for (String query : queries) {
+			needed[stripeOf(query)] = true;
+		}
+		return needed;
+	}
+
+	/**
+	 * Returns this index, which holds the word counts, followed by the stripes.
+	 * The caller must hold the read lock of every stripe it reads.
+	 */
+	@Override
+	protected List<InvertedIndex> getParts() {
+		List<InvertedIndex> parts = new ArrayList<>();
+		parts.add(this);
+		parts.addAll(Arrays.asList(stripes));
+		return parts;
+	}
+
+	@Override
+	protected List<InvertedIndex> getParts(String word) {
+		return List.of(stripes[stripeOf(word)]);
+	}
+
+	@Override
+	public int numWords() {
+		int words = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				words += stripes[i].numWords();
+			}
+			finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return words;
+	}
+
+	@Override
+	public int numLocations(String word) {
+		return readStripe(word, () -> stripes[stripeOf(word)].numLocations(word));
+	}
+
+	@Override
+	public int numPositions(String word, String location) {
+		return readStripe(word, () -> stripes[stripeOf(word)].numPositions(word, location));
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		return readStripe(word, () -> stripes[stripeOf(word)].hasWord(word));
+	}
+
+	@Override
+	public boolean hasLocation(String word, String location) {
+		return readStripe(word, () -> stripes[stripeOf(word)].hasLocation(word, location));
+	}
+
+	@Override
+	public boolean hasPosition(String word, String location, int position) {
+		return readStripe(word, () -> stripes[stripeOf(word)].hasPosition(word, location, position));
+	}
+
+	@Override
+	public Set<String> getWords() {
+		TreeSet<String> words = new TreeSet<>();
+		for (int i = 0; i < stripes.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				words.addAll(stripes[i].getWords());
+			}
+			finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Completions getCompletions(int limit) {
+		return read(allStripes(), () -> super.getCompletions(limit));
+	}
+
+	@Override
+	public Set<String> getLocations(String word) {
+		return readStripe(word, () -> stripes[stripeOf(word)].getLocations(word));
+	}
+
+	@Override
+	public Set<Integer> getPositions(String word, String location) {
+		return readStripe(word, () -> Collections.unmodifiableSet(new TreeSet<>(stripes[stripeOf(word)].getPositions(word, location))));
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(Set<String> queries) {
+		return read(stripesOf(queries, true), () -> super.exactSearch(queries));
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(Set<String> queries) {
+		return read(stripesOf(queries, false), () -> super.partialSearch(queries));
+	}
+
+	@Override
+	public ArrayList<SearchResult> exactSearch(Set<String> queries, int k) {
+		return read(stripesOf(queries, true), () -> super.exactSearch(queries, k));
+	}
+
+	@Override
+	public ArrayList<SearchResult> partialSearch(Set<String> queries, int k) {
+		return read(stripesOf(queries, false), () -> super.partialSearch(queries, k));
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(Query query, boolean exact, Scorer scorer) {
+		return read(stripesOf(query.getTerms(), exact), () -> super.search(query, exact, scorer));
+	}
+
+	@Override
+	public ArrayList<SearchResult> search(Query query, boolean exact, int k, Scorer scorer) {
+		return read(stripesOf(query.getTerms(), exact), () -> super.search(query, exact, k, scorer));
+	}
+
+	/**
+	 * Merges the stripes and this index's word counts into a single index. The
+	 * caller must hold the read lock of every stripe.
+	 *
+	 * @return a new index with the contents of every stripe
+	 */
+	private InvertedIndex snapshot() {
+		InvertedIndex merged = new InvertedIndex(getDocuments());
+		for (InvertedIndex part : getParts()) {
+			merged.addAll(part);
+		}
+		return merged;
+	}
+
+	@Override
+	public String toString() {
+		return read(allStripes(), () -> snapshot().toString());
+	}
+
+	@Override
+	public void toJsonIndex(Path file) throws IOException {
+		read(allStripes(), this::snapshot).toJsonIndex(file);
+	}
+
+	@Override
+	public void toBinary(Path file) throws IOException {
+		read(allStripes(), this::snapshot).toBinary(file);
+	}
+}
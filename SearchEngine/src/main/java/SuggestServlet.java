@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * The servlet class responsible for completing the word being typed in the
+ * search box. A GET request with the text typed so far in the {@code q}
+ * parameter gets back a JSON array of the words in the index that start with
+ * its last word, the words in the most documents first. The completions are
+ * worked out for every prefix at once, so each request only walks down to the
+ * prefix. The words completed are those found in the text rather than their
+ * stems, so "happy" and "runn" complete even though the index holds "happi"
+ * and "run", and only the most common word of each stem is listed.
+ *
+ * Once the index changes, the completions are worked out again by a thread of
+ * their own, and requests keep getting the old completions until the new ones
+ * are ready. Only one such thread runs at a time, and a new one is started no
+ * sooner than {@link #REBUILD_DELAY} after the last one finished, so an index
+ * that keeps changing is not worked through over and over.
+ *
+ * @author tiffanyz
+ */
+public class SuggestServlet extends HttpServlet {
+	/** Default serial version ID (unused) */
+	private static final long serialVersionUID = 1L;
+	/** The most completions a request may ask for */
+	public static final int MAX_SUGGESTIONS = 10;
+	/** The shortest time between working out the completions, in milliseconds */
+	public static final long REBUILD_DELAY = 1000;
+	/** The logger to use for this servlet. */
+	private static Logger log = Log.getRootLogger();
+	/** The thread-safe inverted index to complete words from */
+	private final SafeInvertedIndex index;
+	/** The completions of the words in the index */
+	private volatile Completions completions;
+	/** The version of the index the completions were worked out from */
+	private volatile long version;
+	/** When the completions were last worked out, in nanoseconds */
+	private volatile long builtAt;
+	/** Whether a thread is working out the completions */
+	private final AtomicBoolean rebuilding;
+
+	/**
+	 * Initializes the instance data
+	 *
+	 * @param index the thread-safe inverted index to complete words from
+	 */
+	public SuggestServlet(SafeInvertedIndex index) {
+		super();
+		this.index = index;
+		this.completions = null;
+		this.version = -1;
+		this.builtAt = 0;
+		this.rebuilding = new AtomicBoolean(false);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		log.debug("SuggestServlet ID " + this.hashCode() + " handling GET request.");
+
+		String typed = request.getParameter("q");
+		String[] words = TextParser.parse(typed == null ? "" : typed);
+		int count = MAX_SUGGESTIONS;
+		try {
+			String size = request.getParameter("n");
+			if (size != null) {
+				count = Math.min(Integer.parseInt(size), MAX_SUGGESTIONS);
+			}
+		}
+		catch (NumberFormatException e) {
+			log.debug("Invalid number of suggestions, using " + MAX_SUGGESTIONS + ".");
+		}
+
+		List<String> found = List.of();
+		if (words.length > 0) {
+			found = getCompletions().complete(words[words.length - 1], count);
+		}
+
+		PrintWriter out = response.getWriter();
+		out.write('[');
+		for (int i = 0; i < found.size(); i++) {
+			if (i > 0) {
+				out.write(", ");
+			}
+			JsonWriter.indent(found.get(i), out, 0);
+		}
+		out.write(']');
+		out.flush();
+
+		response.setStatus(HttpServletResponse.SC_OK);
+	}
+
+	/**
+	 * Returns the completions of the words in the index. The first request
+	 * works them out itself, and later requests start working them out again
+	 * in the background if the index has changed since.
+	 *
+	 * @return the latest completions of the words in the index
+	 */
+	private Completions getCompletions() {
+		Completions latest = completions;
+		if (latest == null) {
+			synchronized (this) {
+				if (completions == null) {
+					rebuild();
+				}
+				return completions;
+			}
+		}
+
+		if (version < index.getVersion() && System.nanoTime() - builtAt >= TimeUnit.MILLISECONDS.toNanos(REBUILD_DELAY)
+				&& rebuilding.compareAndSet(false, true)) {
+			Thread worker = new Thread(() -> {
+				try {
+					rebuild();
+				}
+				catch (RuntimeException e) {
+					log.warn("Unable to work out the completions.", e);
+				}
+				finally {
+					rebuilding.set(false);
+				}
+			}, "suggest");
+			worker.setDaemon(true);
+			worker.start();
+		}
+		return latest;
+	}
+
+	/**
+	 * Works out the completions of the words in the index and publishes them.
+	 */
+	private void rebuild() {
+		long current = index.getVersion();
+		completions = index.getCompletions(MAX_SUGGESTIONS);
+		version = current;
+		builtAt = System.nanoTime();
+	}
+}
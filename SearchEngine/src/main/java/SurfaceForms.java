@@ -0,0 +1,172 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The words each stem of an index was found as, so a stem can be shown as a
+ * word that was actually written, such as "software" for the stem "softwar".
+ * Every word is counted each time it is seen, and the most common word of a
+ * stem stands for it. Words seen equally often are picked in sorted order.
+ *
+ * A word is looked up by its characters, so a word held in a reused buffer is
+ * only copied the first time it is seen. This class is thread-safe.
+ *
+ * @author tiffanyz
+ */
+public class SurfaceForms {
+	/** the words of each stem */
+	private final Map<String, Forms> forms;
+
+	/**
+	 * Initializes the instance data
+	 */
+	public SurfaceForms() {
+		this.forms = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Counts the word as seen once for its stem.
+	 *
+	 * @param stem the stem of the word
+	 * @param word the word as found in the text, after cleaning
+	 */
+	public void add(String stem, CharSequence word) {
+		add(stem, word, 1);
+	}
+
+	/**
+	 * Counts the word as seen the given number of times for its stem.
+	 *
+	 * @param stem the stem of the word
+	 * @param word the word as found in the text, after cleaning
+	 * @param count the number of times the word was seen
+	 */
+	private void add(String stem, CharSequence word, int count) {
+		Forms found = forms.get(stem);
+		if (found == null) {
+			found = forms.computeIfAbsent(stem, s -> new Forms());
+		}
+		found.add(word, count);
+	}
+
+	/**
+	 * Adds the counts of the other words to these.
+	 *
+	 * @param other the words to add
+	 */
+	public void addAll(SurfaceForms other) {
+		if (other == this) {
+			return;
+		}
+		for (var entry : other.forms.entrySet()) {
+			String[] words;
+			int[] counts;
+			synchronized (entry.getValue()) {
+				words = Arrays.copyOf(entry.getValue().words, entry.getValue().size);
+				counts = Arrays.copyOf(entry.getValue().counts, entry.getValue().size);
+			}
+			for (int i = 0; i < words.length; i++) {
+				add(entry.getKey(), words[i], counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the most common word of the stem.
+	 *
+	 * @param stem the stem to look up
+	 * @return the most common word of the stem, or the stem itself if no word
+	 *         was seen for it
+	 */
+	public String get(String stem) {
+		Forms found = forms.get(stem);
+		return found == null ? stem : found.best(stem);
+	}
+
+	/**
+	 * Returns every word seen for the stem with the number of times it was seen.
+	 *
+	 * @param stem the stem to look up
+	 * @return a new map from each word of the stem to the times it was seen,
+	 *         which is empty if no word was seen for it
+	 */
+	public Map<String, Integer> getWords(String stem) {
+		Map<String, Integer> words = new HashMap<>();
+		Forms found = forms.get(stem);
+		if (found != null) {
+			synchronized (found) {
+				for (int i = 0; i < found.size; i++) {
+					words.put(found.words[i], found.counts[i]);
+				}
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * @return the number of stems with at least one word
+	 */
+	public int size() {
+		return forms.size();
+	}
+
+	/**
+	 * The words of one stem with the number of times each was seen
+	 */
+	private static class Forms {
+		/** the words seen, the first {@link #size} of which are used */
+		private String[] words;
+		/** the number of times each word was seen, parallel to the words */
+		private int[] counts;
+		/** the number of words seen */
+		private int size;
+
+		/**
+		 * Initializes the instance data
+		 */
+		public Forms() {
+			this.words = new String[1];
+			this.counts = new int[1];
+			this.size = 0;
+		}
+
+		/**
+		 * Counts the word as seen the given number of times.
+		 *
+		 * @param word the word seen
+		 * @param count the number of times it was seen
+		 */
+		public synchronized void add(CharSequence word, int count) {
+			for (int i = 0; i < size; i++) {
+				if (words[i].contentEquals(word)) {
+					counts[i] += count;
+					return;
+				}
+			}
+			if (size == words.length) {
+				words = Arrays.copyOf(words, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+			words[size] = word.toString();
+			counts[size] = count;
+			size++;
+		}
+
+		/**
+		 * @param stem the stem to return if no word was seen
+		 * @return the word seen the most times
+		 */
+		public synchronized String best(String stem) {
+			String best = stem;
+			int most = 0;
+			for (int i = 0; i < size; i++) {
+				if (counts[i] > most || (counts[i] == most && words[i].compareTo(best) < 0)) {
+					best = words[i];
+					most = counts[i];
+				}
+			}
+			return best;
+		}
+	}
+}
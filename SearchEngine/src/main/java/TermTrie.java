@@ -0,0 +1,394 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Stores the postings of every word of an index in a radix trie, where each
+ * edge holds the characters shared by every word below it. Words with a common
+ * prefix store that prefix once, an exact lookup compares each character of
+ * the word at most once, and the words starting with a prefix are found by
+ * walking down to the prefix and listing everything below it, in time
+ * proportional to the number of words found.
+ *
+ * Words are listed in the same order as a {@link java.util.TreeMap} of strings
+ * would list them. Like a tree map, this class is not thread-safe, and removing
+ * words is not supported.
+ *
+ * @author tiffanyz
+ */
+public class TermTrie extends AbstractMap<String, Postings> {
+	/** The node of the empty word, which has an empty label */
+	private final Node root;
+	/** The number of words stored */
+	private int size;
+
+	/**
+	 * Constructor: creates an empty trie
+	 */
+	public TermTrie() {
+		this.root = new Node(new char[0], null);
+		this.size = 0;
+	}
+
+	@Override
+	public Postings get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		Node node = find((String) key);
+		return node != null ? node.postings : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	@Override
+	public Postings put(String word, Postings postings) {
+		if (postings == null) {
+			throw new NullPointerException("Postings must not be null: " + word);
+		}
+		Node node = root;
+		int i = 0;
+		while (i < word.length()) {
+			int at = node.indexOf(word.charAt(i));
+			if (at < 0) {
+				node.insert(-(at + 1), new Node(word.substring(i).toCharArray(), postings));
+				size++;
+				return null;
+			}
+
+			Node child = node.children[at];
+			int matched = child.match(word, i);
+			if (matched < child.label.length) {
+				Node middle = new Node(Arrays.copyOf(child.label, matched), null);
+				child.label = Arrays.copyOfRange(child.label, matched, child.label.length);
+				middle.insert(0, child);
+				node.children[at] = middle;
+				child = middle;
+			}
+			i += matched;
+			node = child;
+		}
+
+		Postings previous = node.postings;
+		node.postings = postings;
+		if (previous == null) {
+			size++;
+		}
+		return previous;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Postings>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Map.Entry<String, Postings>> iterator() {
+				return new TrieIterator(root, "");
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Lists every word that starts with the prefix, including the prefix itself,
+	 * in sorted order.
+	 *
+	 * @param prefix the prefix to search for
+	 * @return the words starting with the prefix and their postings
+	 */
+	public Iterable<Map.Entry<String, Postings>> prefixEntries(String prefix) {
+		Node node = root;
+		int i = 0;
+		while (i < prefix.length()) {
+			int at = node.indexOf(prefix.charAt(i));
+			if (at < 0) {
+				return Set.of();
+			}
+			Node child = node.children[at];
+			int matched = child.match(prefix, i);
+			if (i + matched == prefix.length()) {
+				String parent = prefix.substring(0, i);
+				return () -> new TrieIterator(child, parent);
+			}
+			if (matched < child.label.length) {
+				return Set.of();
+			}
+			i += matched;
+			node = child;
+		}
+		return () -> new TrieIterator(root, "");
+	}
+
+	/**
+	 * Finds every word within the given edit distance of the word, counting
+	 * each inserted, deleted or replaced character as one edit. The trie is
+	 * walked from the root while keeping one row of the edit distance table for
+	 * each character of the path, which is the state of a Levenshtein automaton
+	 * for the word. A branch is left as soon as every entry of its row is over
+	 * the distance, so only the words close to the word are visited.
+	 *
+	 * @param word the word to compare with
+	 * @param distance the largest number of edits allowed
+	 * @param action called with each word found and its postings, in sorted
+	 *        order, together with its edit distance from the word
+	 */
+	public void forEachWithin(String word, int distance, ObjIntConsumer<Map.Entry<String, Postings>> action) {
+		int[] row = new int[word.length() + 1];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+		walk(root, row, new StringBuilder(), word, distance, action);
+	}
+
+	/**
+	 * Visits a node and its children for {@link #forEachWithin(String, int, ObjIntConsumer)}.
+	 *
+	 * @param node the node to visit
+	 * @param previous the row of the edit distance table for the word of the
+	 *        parent node
+	 * @param path the word of the parent node, which is restored before returning
+	 * @param word the word to compare with
+	 * @param distance the largest number of edits allowed
+	 * @param action called with each word found
+	 */
+	private static void walk(Node node, int[] previous, StringBuilder path, String word, int distance,
+			ObjIntConsumer<Map.Entry<String, Postings>> action) {
+		int length = path.length();
+		int[] row = previous;
+		for (char c : node.label) {
+			int[] next = new int[row.length];
+			next[0] = row[0] + 1;
+			int best = next[0];
+			for (int i = 1; i < row.length; i++) {
+				int replace = row[i - 1] + (word.charAt(i - 1) == c ? 0 : 1);
+				next[i] = Math.min(replace, Math.min(row[i], next[i - 1]) + 1);
+				best = Math.min(best, next[i]);
+			}
+			if (best > distance) {
+				path.setLength(length);
+				return;
+			}
+			path.append(c);
+			row = next;
+		}
+
+		if (node.postings != null && row[row.length - 1] <= distance) {
+			action.accept(new AbstractMap.SimpleImmutableEntry<>(path.toString(), node.postings), row[row.length - 1]);
+		}
+		for (int i = 0; i < node.size; i++) {
+			walk(node.children[i], row, path, word, distance, action);
+		}
+		path.setLength(length);
+	}
+
+	/**
+	 * @param word the word to look up
+	 * @return the node that ends with the word, or null if there is none
+	 */
+	private Node find(String word) {
+		Node node = root;
+		int i = 0;
+		while (i < word.length()) {
+			int at = node.indexOf(word.charAt(i));
+			if (at < 0) {
+				return null;
+			}
+			Node child = node.children[at];
+			if (child.match(word, i) < child.label.length) {
+				return null;
+			}
+			i += child.label.length;
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * A node of the trie. The word of a node is made of the labels of every node
+	 * from the root down to it.
+	 */
+	private static class Node {
+		/** The characters added to the word of the parent node */
+		private char[] label;
+		/** The postings of the word of this node, or null if it is not a word */
+		private Postings postings;
+		/** The first character of the label of each child, in increasing order */
+		private char[] keys;
+		/** The children, parallel to {@link #keys} */
+		private Node[] children;
+		/** The number of children */
+		private int size;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param label the characters added to the word of the parent node
+		 * @param postings the postings of the word of this node, or null
+		 */
+		public Node(char[] label, Postings postings) {
+			this.label = label;
+			this.postings = postings;
+			this.keys = null;
+			this.children = null;
+			this.size = 0;
+		}
+
+		/**
+		 * @param first the first character of the label of the child
+		 * @return the index of the child, or (-(insertion point) - 1) if there is
+		 *         no such child
+		 */
+		public int indexOf(char first) {
+			return keys == null ? -1 : Arrays.binarySearch(keys, 0, size, first);
+		}
+
+		/**
+		 * Adds a child at the given index, which keeps the children sorted.
+		 *
+		 * @param at the index to add the child at
+		 * @param child the child to add
+		 */
+		public void insert(int at, Node child) {
+			if (keys == null) {
+				keys = new char[1];
+				children = new Node[1];
+			}
+			else if (size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				children = Arrays.copyOf(children, size * 2);
+			}
+			System.arraycopy(keys, at, keys, at + 1, size - at);
+			System.arraycopy(children, at, children, at + 1, size - at);
+			keys[at] = child.label[0];
+			children[at] = child;
+			size++;
+		}
+
+		/**
+		 * @param word the word to compare with
+		 * @param from the index of the word to start comparing at
+		 * @return the number of characters of the label that match the word
+		 */
+		public int match(String word, int from) {
+			int length = Math.min(label.length, word.length() - from);
+			int i = 0;
+			while (i < length && label[i] == word.charAt(from + i)) {
+				i++;
+			}
+			return i;
+		}
+	}
+
+	/**
+	 * Lists the words below a node in sorted order, visiting each node before
+	 * its children and the children in order of their first character.
+	 */
+	private static class TrieIterator implements Iterator<Map.Entry<String, Postings>> {
+		/** The nodes being visited, from the starting node down */
+		private Node[] nodes;
+		/** The next child to visit for each node, or -1 if its word is next */
+		private int[] next;
+		/** The length of the word of each node */
+		private int[] lengths;
+		/** The number of nodes being visited */
+		private int depth;
+		/** The characters of the word of the deepest node */
+		private char[] word;
+		/** The next entry to return, or null if there are no more */
+		private Map.Entry<String, Postings> entry;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param start the node to list the words below
+		 * @param parent the word of the parent of the node
+		 */
+		public TrieIterator(Node start, String parent) {
+			this.nodes = new Node[8];
+			this.next = new int[8];
+			this.lengths = new int[8];
+			this.depth = 0;
+			this.word = Arrays.copyOf(parent.toCharArray(), Math.max(16, parent.length() * 2));
+			push(start, parent.length());
+			this.entry = advance();
+		}
+
+		/**
+		 * Starts visiting a node.
+		 *
+		 * @param node the node to visit
+		 * @param length the length of the word of its parent
+		 */
+		private void push(Node node, int length) {
+			int end = length + node.label.length;
+			if (end > word.length) {
+				word = Arrays.copyOf(word, Math.max(end, word.length * 2));
+			}
+			System.arraycopy(node.label, 0, word, length, node.label.length);
+			if (depth == nodes.length) {
+				nodes = Arrays.copyOf(nodes, depth * 2);
+				next = Arrays.copyOf(next, depth * 2);
+				lengths = Arrays.copyOf(lengths, depth * 2);
+			}
+			nodes[depth] = node;
+			next[depth] = -1;
+			lengths[depth] = end;
+			depth++;
+		}
+
+		/**
+		 * @return the next word and its postings, or null if there are no more
+		 */
+		private Map.Entry<String, Postings> advance() {
+			while (depth > 0) {
+				int last = depth - 1;
+				Node node = nodes[last];
+				int child = next[last]++;
+				if (child < 0) {
+					if (node.postings != null) {
+						return new AbstractMap.SimpleImmutableEntry<>(new String(word, 0, lengths[last]), node.postings);
+					}
+				}
+				else if (child < node.size) {
+					push(node.children[child], lengths[last]);
+				}
+				else {
+					nodes[last] = null;
+					depth--;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return entry != null;
+		}
+
+		@Override
+		public Map.Entry<String, Postings> next() {
+			if (entry == null) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, Postings> current = entry;
+			entry = advance();
+			return current;
+		}
+	}
+}
@@ -1,8 +1,20 @@
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
  * Parsing text in a consistent manner.
+ *
+ * Text is parsed in a single pass over its characters, using a table built
+ * once from the same Unicode classes as the regular expressions below that
+ * tells what every character becomes once it is normalized, cleaned and
+ * lowercased. Characters the table
+ * cannot handle on their own, such as a capital sigma whose lowercase depends
+ * on the letters around it, send the whole text through the regular
+ * expressions instead, so the words are always the same either way.
  * 
  * @author tiffanyz
  */
@@ -13,6 +25,15 @@ public class TextParser {
 	/** Regular expression that matches non-alphabetic characters. **/
 	public static final Pattern CLEAN_REGEX = Pattern.compile("(?U)[^\\p{Alpha}\\p{Space}]+");
 
+	/** Marks a character that is removed when cleaning */
+	private static final char DROP = '\u0000';
+	/** Marks a whitespace character, which ends a word */
+	private static final char SPACE = ' ';
+	/** Marks a character that becomes more than one letter */
+	private static final char EXPAND = '\uFFFE';
+	/** Marks a character that only the regular expressions handle correctly */
+	private static final char SLOW = '\uFFFF';
+
 	/**
 	 * Cleans the text by removing any non-alphabetic characters (e.g. non-letters
 	 * like digits, punctuation, symbols, and diacritical marks like the umlaut)
@@ -47,6 +68,198 @@ public class TextParser {
 	 * @see #parse(String)
 	 */
 	public static String[] parse(String text) {
-		return split(clean(text));
+		List<String> words = new ArrayList<>();
+		parse(text, word -> words.add(word.toString()));
+		return words.toArray(new String[0]);
+	}
+
+	/**
+	 * Parses the text into clean words, passing each word to the action as it
+	 * is found.
+	 *
+	 * @param text the text to clean and split
+	 * @param action the action to run on each word
+	 *
+	 * @see #parse(CharSequence, StringBuilder, Consumer)
+	 */
+	public static void parse(CharSequence text, Consumer<? super CharSequence> action) {
+		parse(text, new StringBuilder(), action);
+	}
+
+	/**
+	 * Parses the text into clean words, passing each word to the action as it
+	 * is found. The words are built in the buffer given, which is cleared before
+	 * every word, so the action must copy a word it wants to keep. The words are
+	 * the same as the ones returned by {@link #parse(String)}.
+	 *
+	 * @param text the text to clean and split
+	 * @param word the buffer to build each word in
+	 * @param action the action to run on each word
+	 */
+	public static void parse(CharSequence text, StringBuilder word, Consumer<? super CharSequence> action) {
+		if (!isSimple(text)) {
+			for (String slow : split(clean(text.toString()))) {
+				action.accept(slow);
+			}
+			return;
+		}
+
+		word.setLength(0);
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			Page page = Page.of(c);
+			char mapped = page.chars[c & 0xFF];
+			if (mapped == SPACE) {
+				if (word.length() > 0) {
+					action.accept(word);
+					word.setLength(0);
+				}
+			}
+			else if (mapped == EXPAND) {
+				word.append(page.expansions[c & 0xFF]);
+			}
+			else if (mapped != DROP) {
+				word.append(mapped);
+			}
+		}
+		if (word.length() > 0) {
+			action.accept(word);
+		}
+	}
+
+	/**
+	 * Checks whether every character of the text can be looked up in the table
+	 * on its own. Languages with their own lowercase rules always use the
+	 * regular expressions.
+	 *
+	 * @param text the text to check
+	 * @return true if the text can be parsed with the table
+	 */
+	private static boolean isSimple(CharSequence text) {
+		String language = Locale.getDefault().getLanguage();
+		if (language.equals("tr") || language.equals("az") || language.equals("lt")) {
+			return false;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Page.of(c).chars[c & 0xFF] == SLOW) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * What a block of 256 characters becomes once normalized, cleaned and
+	 * lowercased. Each block is built the first time one of its characters is
+	 * parsed, so text in a few scripts only builds a few blocks. Two threads may
+	 * build the same block at once, which only wastes a little work, and the
+	 * final fields make sure a block is never seen half built.
+	 */
+	private static class Page {
+		/** the blocks built so far, by the high byte of their characters */
+		private static final Page[] PAGES = new Page[256];
+
+		/** the letter each character becomes, or one of the markers */
+		private final char[] chars;
+		/** the letters of each character marked {@link TextParser#EXPAND} */
+		private final String[] expansions;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param high the high byte of the characters in the block
+		 */
+		private Page(int high) {
+			this.chars = new char[256];
+			this.expansions = new String[256];
+			StringBuilder kept = new StringBuilder();
+			for (int low = 0; low < 256; low++) {
+				int c = high << 8 | low;
+				if (Character.isSurrogate((char) c)) {
+					chars[low] = SLOW;
+				}
+				else if (isSpace(c)) {
+					// strip() only removes the spaces isWhitespace() knows about
+					chars[low] = Character.isWhitespace(c) ? SPACE : SLOW;
+				}
+				else {
+					String text = Normalizer.normalize(String.valueOf((char) c), Normalizer.Form.NFD);
+					kept.setLength(0);
+					for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+						int letter = text.codePointAt(i);
+						if (Character.isAlphabetic(letter) || isSpace(letter)) {
+							kept.appendCodePoint(letter);
+						}
+					}
+					String lower = kept.toString().toLowerCase(Locale.ROOT);
+					if (kept.length() == 0) {
+						chars[low] = DROP;
+					}
+					else if (!isSimple(kept, lower)) {
+						chars[low] = SLOW;
+					}
+					else if (lower.length() == 1) {
+						chars[low] = lower.charAt(0);
+					}
+					else {
+						chars[low] = EXPAND;
+						expansions[low] = lower;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @param c the character to look up
+		 * @return the block of the character, built if it was not already
+		 */
+		private static Page of(char c) {
+			Page page = PAGES[c >>> 8];
+			if (page == null) {
+				page = new Page(c >>> 8);
+				PAGES[c >>> 8] = page;
+			}
+			return page;
+		}
+
+		/**
+		 * Checks for the whitespace matched by {@link TextParser#SPLIT_REGEX},
+		 * which is the Unicode White_Space property.
+		 *
+		 * @param c the character to check
+		 * @return true if the character is whitespace
+		 */
+		private static boolean isSpace(int c) {
+			int type = Character.getType(c);
+			return type == Character.SPACE_SEPARATOR || type == Character.LINE_SEPARATOR
+					|| type == Character.PARAGRAPH_SEPARATOR || (c >= '\t' && c <= '\r') || c == '\u0085';
+		}
+
+		/**
+		 * Checks whether the letters a character becomes are the same wherever
+		 * the character is. Marks may be reordered by normalizing, and a
+		 * capital sigma or a letter that lowercases to more than one character
+		 * depends on the letters around it.
+		 *
+		 * @param kept the letters the character becomes before lowercasing
+		 * @param lower the letters lowercased
+		 * @return true if the character can be looked up on its own
+		 */
+		private static boolean isSimple(CharSequence kept, String lower) {
+			if (kept.length() != lower.length()) {
+				return false;
+			}
+			for (int i = 0; i < kept.length(); i++) {
+				char letter = kept.charAt(i);
+				int type = Character.getType(letter);
+				if (letter == '\u03A3' || Character.isSurrogate(letter) || Character.isWhitespace(letter)
+						|| type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+						|| type == Character.ENCLOSING_MARK || Character.toLowerCase(letter) != lower.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
 	}
 }
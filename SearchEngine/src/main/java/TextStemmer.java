@@ -1,4 +1,5 @@
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,6 +26,91 @@ public class TextStemmer {
 	/** The default stemmer algorithm used by this class. */
 	public static final SnowballStemmer.ALGORITHM DEFAULT = SnowballStemmer.ALGORITHM.ENGLISH;
 
+	/** The number of stems each thread remembers by default. */
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	/** The number of stems each thread remembers. */
+	private static volatile int cacheSize = DEFAULT_CACHE_SIZE;
+
+	/** The caching stemmer of each thread, using the default algorithm. */
+	private static final ThreadLocal<CachedStemmer> STEMMERS = new ThreadLocal<>();
+
+	/** Checks whether a thread is virtual, or null on a JDK without virtual threads. */
+	private static final Method IS_VIRTUAL = findIsVirtual();
+
+	/**
+	 * Returns the stemmer of the calling thread, which uses the default algorithm
+	 * and remembers the stems of recent words. The stemmer is made the first
+	 * time a thread asks for one and kept for the life of the thread, so it must
+	 * not be shared with other threads.
+	 *
+	 * A virtual thread is started for a single task, so it would fill a cache
+	 * only to throw it away. It gets a new stemmer without a cache instead.
+	 *
+	 * @return the stemmer of the calling thread
+	 *
+	 * @see #DEFAULT
+	 * @see CachedStemmer
+	 */
+	public static Stemmer getStemmer() {
+		if (isVirtual(Thread.currentThread())) {
+			return new CachedStemmer(new SnowballStemmer(DEFAULT), 0);
+		}
+		CachedStemmer stemmer = STEMMERS.get();
+		if (stemmer == null) {
+			stemmer = new CachedStemmer(new SnowballStemmer(DEFAULT), cacheSize);
+			STEMMERS.set(stemmer);
+		}
+		return stemmer;
+	}
+
+	/**
+	 * Looks up the method that checks whether a thread is virtual. The project
+	 * is compiled for a JDK without virtual threads, so it is looked up by
+	 * reflection.
+	 *
+	 * @return the method, or null if there are no virtual threads
+	 */
+	private static Method findIsVirtual() {
+		try {
+			return Thread.class.getMethod("isVirtual");
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param thread the thread to check
+	 * @return true if the thread is virtual
+	 */
+	private static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		}
+		catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Sets the number of stems each thread remembers. Threads that already have
+	 * a stemmer keep the cache they have.
+	 *
+	 * @param size the number of stems to remember, or 0 to remember none
+	 * @throws IllegalArgumentException if the size is negative or larger than
+	 *         {@link CachedStemmer#MAX_SIZE}
+	 */
+	public static void setCacheSize(int size) {
+		if (size < 0 || size > CachedStemmer.MAX_SIZE) {
+			throw new IllegalArgumentException("Cache size must be between 0 and " + CachedStemmer.MAX_SIZE + ": " + size);
+		}
+		cacheSize = size;
+	}
+
 	/**
 	 * Returns a list of cleaned and stemmed words parsed from the provided line.
 	 *
@@ -49,9 +135,7 @@ public class TextStemmer {
 	 * @param stemmedWords a list used to store the stemmed words
 	 */
 	public static void stemLine(String line, Stemmer stemmer, Collection<String> stemmedWords) {
-		for (String word : TextParser.parse(line)) {
-			stemmedWords.add(stemmer.stem(word).toString());
-		}
+		TextParser.parse(line, word -> stemmedWords.add(stemmer.stem(word).toString()));
 	}
 
 	/**
@@ -61,12 +145,11 @@ public class TextStemmer {
 	 * @param line the line of words to clean, split, and stem
 	 * @return a list of cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer
-	 * @see #DEFAULT
+	 * @see #getStemmer()
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static ArrayList<String> listStems(String line) {
-		return listStems(line, new SnowballStemmer(DEFAULT));
+		return listStems(line, getStemmer());
 	}
 
 	/**
@@ -84,7 +167,7 @@ public class TextStemmer {
 		List<String> stems = new ArrayList<String>();
 		try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
 			String line = null;
-			Stemmer stemmer = new SnowballStemmer(DEFAULT);
+			Stemmer stemmer = getStemmer();
 			while ((line = reader.readLine()) != null) {
 				stemLine(line, stemmer, stems);
 			}
@@ -99,12 +182,11 @@ public class TextStemmer {
 	 * @param line the line of words to clean, split, and stem
 	 * @return a sorted set of unique cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer
-	 * @see #DEFAULT
+	 * @see #getStemmer()
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static TreeSet<String> uniqueStems(String line) {
-		return uniqueStems(line, new SnowballStemmer(DEFAULT));
+		return uniqueStems(line, getStemmer());
 	}
 
 	/**
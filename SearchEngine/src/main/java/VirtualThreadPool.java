@@ -0,0 +1,72 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A thread pool for the Jetty server that runs every job on a new virtual
+ * thread, so a request waiting on the index never holds one of a fixed number
+ * of threads. The pool never runs low on threads, as it starts a new one for
+ * every job.
+ *
+ * @author tiffanyz
+ *
+ * @see WorkQueue#newThreadPerTaskExecutor()
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+	/** The executor that starts a thread for every job */
+	private final ExecutorService executor;
+	/** The number of jobs running */
+	private final AtomicInteger running;
+
+	/**
+	 * Initializes the instance data
+	 */
+	public VirtualThreadPool() {
+		this.executor = WorkQueue.newThreadPerTaskExecutor();
+		this.running = new AtomicInteger();
+	}
+
+	@Override
+	public void execute(Runnable job) {
+		executor.execute(() -> {
+			running.incrementAndGet();
+			try {
+				job.run();
+			}
+			finally {
+				running.decrementAndGet();
+			}
+		});
+	}
+
+	@Override
+	protected void doStop() throws Exception {
+		executor.shutdown();
+		super.doStop();
+	}
+
+	@Override
+	public void join() throws InterruptedException {
+		while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			continue;
+		}
+	}
+
+	@Override
+	public int getThreads() {
+		return running.get();
+	}
+
+	@Override
+	public int getIdleThreads() {
+		return 0;
+	}
+
+	@Override
+	public boolean isLowOnThreads() {
+		return false;
+	}
+}
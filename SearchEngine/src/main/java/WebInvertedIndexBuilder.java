@@ -3,9 +3,13 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import opennlp.tools.stemmer.Stemmer;
+
 /**
  * Build the given inverted index from web
  * 
@@ -22,6 +26,8 @@ public class WebInvertedIndexBuilder {
 	private final int max;
 	/** the list of URLs to crawl */
 	private final Set<URL> urls;
+	/** limits how many pages are parsed at once, while fetches are not limited */
+	private final Semaphore parsing;
 	
 	/**
 	 * Initializes the instance data
@@ -35,6 +41,7 @@ public class WebInvertedIndexBuilder {
 		this.queue = queue;
 		this.max = max;
 		this.urls = new HashSet<>();
+		this.parsing = new Semaphore(queue.size());
 	}
 	
 	/**
@@ -68,13 +75,40 @@ public class WebInvertedIndexBuilder {
 
 		@Override
 		public void run() {
-			InvertedIndex local = new InvertedIndex();
+			InvertedIndex local = new InvertedIndex(index.getDocuments());
 			String html = HtmlFetcher.fetch(seed, 3);
 			if (html == null) {
 				return;
 			}
+
+			ArrayList<URL> found;
+			parsing.acquireUninterruptibly();
+			try {
+				found = parse(local, html);
+			}
+			finally {
+				parsing.release();
+			}
+
+			for (URL link : found) {
+				queue.execute(new Task(link));
+			}
+			index.addAll(local);
+		}
+
+		/**
+		 * Claims the new links of the page and adds its words to the local index.
+		 * The links are queued by the caller once no locks or permits are held,
+		 * since a full queue may run them on the calling thread.
+		 * 
+		 * @param local the index to add the words to
+		 * @param html the fetched page
+		 * @return the links that were not crawled before
+		 */
+		private ArrayList<URL> parse(InvertedIndex local, String html) {
 			html = HtmlCleaner.stripBlockElements(html);
 			
+			ArrayList<URL> found = new ArrayList<>();
 			int size = 0;
 			synchronized (urls) {
 				size = urls.size();
@@ -88,19 +122,22 @@ public class WebInvertedIndexBuilder {
 						}
 						if (!urls.contains(link)) {
 							urls.add(link);
-							queue.execute(new Task(link));
+							found.add(link);
 						}
 					}
 				}
 			}
 			
 			String striped = HtmlCleaner.stripHtml(html);
-			ArrayList<String> stemmed = TextStemmer.listStems(striped);
-			for (int i = 0; i < stemmed.size(); i++) {
-				local.add(seed.toString(), stemmed.get(i), i);
-			}
-			
-			index.addAll(local);
+			ArrayList<String> stemmed = new ArrayList<>();
+			Stemmer stemmer = TextStemmer.getStemmer();
+			TextParser.parse(striped, word -> {
+				String stem = stemmer.stem(word).toString();
+				local.getSurfaceForms().add(stem, word);
+				stemmed.add(stem);
+			});
+			local.add(seed.toString(), stemmed);
+			return found;
 		}
 	}
 }
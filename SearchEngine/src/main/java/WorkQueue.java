@@ -1,25 +1,64 @@
-import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
- * A simple work queue implementation based on the IBM Developer article by
- * Brian Goetz. It is up to the user of this class to keep track of whether
- * there is any pending work remaining.
+ * A work queue backed by a work-stealing pool. Every worker thread has a deque
+ * of its own: work added by a worker, such as the links found by a crawl task,
+ * goes onto that worker's deque, and idle workers steal from the other end of
+ * a busy worker's deque instead of all waiting on one shared lock. Work added
+ * from other threads goes onto shared submission queues. It is up to the user
+ * of this class to keep track of whether there is any pending work remaining.
  *
- * @see <a href="https://www.ibm.com/developerworks/library/j-jtp0730/index.html">
- * Java Theory and Practice: Thread Pools and Work Queues</a>
+ * A work queue may instead run every work request on a new virtual thread,
+ * which suits work that mostly waits on the network. The number of threads is
+ * then only a hint for how much of the work should run at once, which the
+ * user of the queue may enforce with a semaphore of {@link #size()} permits.
+ *
+ * The number of work requests waiting to start may be bounded, in which case
+ * a {@link Policy} decides what happens to work added while the queue is full.
+ * The depth of the queue and how often each policy had to act are kept as
+ * metrics, see {@link #toString()}.
+ *
+ * @see ForkJoinPool
  */
 public class WorkQueue {
-	/** Pool of worker threads that will wait in the background until work is available */
-	private final PoolWorker[] workers;
-	/** Queue of pending work requests. */
-	private final LinkedList<Runnable> queue;
+	/** Pool of worker threads, each with its own deque of work, or one thread per work request */
+	private final ExecutorService pool;
+	/** The number of worker threads, or of work requests that should run at once */
+	private final int threads;
 	/** Used to signal the queue should be shutdown. */
 	private volatile boolean shutdown;
 	/** The amount of pending (or unfinished) work. */
-	private int pending;
+	private final AtomicInteger pending;
+	/** The number of work requests waiting to start */
+	private final AtomicInteger depth;
+	/** The largest number of work requests waiting to start, or 0 if unbounded */
+	private final int capacity;
+	/** What to do with work added while the queue is full */
+	private final Policy policy;
+	/** One permit for every work request that may still wait to start, or null if unbounded */
+	private final Semaphore room;
+	/** The number of times work had to wait for room in the queue */
+	private final LongAdder blocked;
+	/** The number of work requests run by the thread that added them */
+	private final LongAdder callerRuns;
+	/** The number of work requests dropped */
+	private final LongAdder dropped;
+	/** The number of work requests let into a full queue because no spare worker could wait */
+	private final LongAdder overflowed;
+	/** The most spare workers started while workers wait for room in the queue */
+	public static final int MAX_SPARES = 256;
+	/** The work queue whose work the current thread is running, if any */
+	private static final ThreadLocal<WorkQueue> running = new ThreadLocal<>();
 	/** Logger to use for this class. */
 	private final Logger log = LogManager.getLogger();
 
@@ -29,30 +68,188 @@ public class WorkQueue {
 	 * @param threads number of worker threads; should be greater than 1
 	 */
 	public WorkQueue(int threads) {
-		
-		this.queue = new LinkedList<Runnable>();
-		this.workers = new PoolWorker[threads];
+		this(threads, false);
+	}
+
+	/**
+	 * Starts a work queue that either uses the specified number of threads, or
+	 * runs every work request on a new virtual thread.
+	 *
+	 * @param threads number of worker threads, or of work requests that should
+	 *        run at once if virtual
+	 * @param virtual whether to run every work request on a new virtual thread
+	 *
+	 * @see #newThreadPerTaskExecutor()
+	 */
+	public WorkQueue(int threads, boolean virtual) {
+		this(threads, virtual, 0, Policy.BLOCK);
+	}
+
+	/**
+	 * Starts a work queue that holds at most the given number of work requests
+	 * waiting to start.
+	 *
+	 * @param threads number of worker threads, or of work requests that should
+	 *        run at once if virtual
+	 * @param virtual whether to run every work request on a new virtual thread
+	 * @param capacity the largest number of work requests waiting to start, or
+	 *        0 for no limit
+	 * @param policy what to do with work added while the queue is full
+	 */
+	public WorkQueue(int threads, boolean virtual, int capacity, Policy policy) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+		}
+		this.threads = threads;
+		this.pool = virtual ? newThreadPerTaskExecutor()
+				: new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true,
+						0, threads + MAX_SPARES, 1, null, 60, TimeUnit.SECONDS);
 
 		this.shutdown = false;
-		this.pending = 0;
+		this.pending = new AtomicInteger();
+		this.depth = new AtomicInteger();
+		this.capacity = capacity;
+		this.policy = policy;
+		this.room = capacity > 0 ? new Semaphore(capacity) : null;
+		this.blocked = new LongAdder();
+		this.callerRuns = new LongAdder();
+		this.dropped = new LongAdder();
+		this.overflowed = new LongAdder();
+	}
 
-		for (int i = 0; i < threads; i++) {
-			workers[i] = new PoolWorker();
-			workers[i].start();
+	/**
+	 * Creates an executor that starts a new virtual thread for every task. The
+	 * project is compiled for a JDK without virtual threads, so the executor is
+	 * looked up by reflection. On a JDK without them, a new platform thread is
+	 * started for every task instead, reusing idle ones.
+	 *
+	 * @return an executor that runs every task on a thread of its own
+	 */
+	public static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			LogManager.getLogger().warn("Virtual threads are not available, using a platform thread per task.");
+			return Executors.newCachedThreadPool();
 		}
 	}
 
 	/**
 	 * Adds a work request to the queue. A thread will process this request when
-	 * available.
+	 * available. Requests added after a shutdown are ignored. If the queue is
+	 * full, the policy of the queue decides what happens to the request.
 	 *
 	 * @param r work request (in the form of a {@link Runnable} object)
 	 */
 	public void execute(Runnable r) {
-		incrementPending();
-		synchronized (queue) {
-			queue.addLast(r);
-			queue.notifyAll();
+		if (shutdown) {
+			log.debug("Ignoring work added after shutdown.");
+			return;
+		}
+		boolean holdsRoom = room != null;
+		if (room != null && !room.tryAcquire()) {
+			switch (policy) {
+				case BLOCK:
+					blocked.increment();
+					if (!awaitRoom()) {
+						overflowed.increment();
+						holdsRoom = false;
+					}
+					break;
+				case DROP:
+					dropped.increment();
+					log.debug("Dropping work added to a full queue.");
+					return;
+				default:
+					callerRuns.increment();
+					runOnCaller(r);
+					return;
+			}
+		}
+		pending.incrementAndGet();
+		submit(r, holdsRoom);
+	}
+
+	/**
+	 * Waits for room in the queue. A worker of this queue waits through
+	 * {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)}, so the
+	 * pool starts a spare worker to keep running the waiting work, which makes
+	 * room, while this one waits. The pool adds at most {@link #MAX_SPARES}
+	 * spare workers, so once that many are waiting the work is let into the
+	 * queue without room instead of running on the worker that added it, which
+	 * could nest work inside work without limit.
+	 *
+	 * @return true once room is taken, or false if this worker cannot wait
+	 *         because the pool has as many spare workers as it allows
+	 */
+	private boolean awaitRoom() {
+		if (running.get() != this) {
+			room.acquireUninterruptibly();
+			return true;
+		}
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() {
+					room.acquireUninterruptibly();
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return room.tryAcquire();
+				}
+			});
+			return true;
+		}
+		catch (InterruptedException | RejectedExecutionException e) {
+			log.debug("Unable to wait for room in the queue.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Hands a work request that is counted as pending over to the pool.
+	 *
+	 * @param r work request (in the form of a {@link Runnable} object)
+	 * @param holdsRoom whether the request holds room in the queue, which is
+	 *        given back once it starts
+	 */
+	private void submit(Runnable r, boolean holdsRoom) {
+		depth.incrementAndGet();
+		try {
+			pool.execute(new Task(r, holdsRoom));
+		}
+		catch (RejectedExecutionException e) {
+			log.debug("Ignoring work added after shutdown.");
+			depth.decrementAndGet();
+			if (holdsRoom) {
+				room.release();
+			}
+			decrementPending();
+		}
+	}
+
+	/**
+	 * Runs a work request on the thread that added it, counted as pending so
+	 * {@link #finish()} still waits for it.
+	 *
+	 * @param r work request (in the form of a {@link Runnable} object)
+	 */
+	private void runOnCaller(Runnable r) {
+		pending.incrementAndGet();
+		WorkQueue outer = running.get();
+		running.set(this);
+		try {
+			r.run();
+		}
+		catch (RuntimeException e) {
+			log.error("Warning: Work queue encountered an exception while running.", e);
+		}
+		finally {
+			running.set(outer);
+			decrementPending();
 		}
 	}
 
@@ -74,9 +271,9 @@ public class WorkQueue {
 	 */
 	public synchronized void finish() {
 		try {
-			while (pending > 0) {
+			while (pending.get() > 0) {
 				this.wait();
-				log.debug("Woke up with pending at {}.", pending);
+				log.debug("Woke up with pending at {}.", pending.get());
 			}
 		}
 		catch (InterruptedException e) {
@@ -90,81 +287,149 @@ public class WorkQueue {
 	 */
 	public void shutdown() {
 		shutdown = true;
+		pool.shutdown();
+	}
 
-		synchronized (queue) {
-			queue.notifyAll();
+	/**
+	 * Safely decrements the pending work, and wakes up any threads waiting for
+	 * work to be completed. The lock is only taken when the last work finishes.
+	 */
+	private void decrementPending() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
 		}
 	}
-	
+
+	/**
+	 * Returns the number of worker threads being used by the work queue.
+	 *
+	 * @return number of worker threads
+	 */
+	public int size() {
+		return threads;
+	}
+
 	/**
-	 * Safely increments the shared pending variable.
+	 * @return the largest number of work requests waiting to start, or 0 if
+	 *         the queue is unbounded
 	 */
-	private synchronized void incrementPending() {
-		pending++;
+	public int getCapacity() {
+		return capacity;
 	}
-	
+
 	/**
-	 * Safely decrements the shared pending variable, and wakes up any threads
-	 * waiting for work to be completed.
+	 * @return the number of work requests waiting to start
 	 */
-	private synchronized void decrementPending() {
-		assert pending > 0;
-		pending--;
+	public int getDepth() {
+		return depth.get();
+	}
 
-		if (pending == 0) {
-			this.notifyAll();
-		}
+	/**
+	 * @return the number of times work had to wait for room in the queue
+	 */
+	public long getBlocked() {
+		return blocked.sum();
 	}
 
 	/**
-	 * Returns the number of worker threads being used by the work queue.
-	 *
-	 * @return number of worker threads
+	 * @return the number of work requests run by the thread that added them
 	 */
-	public int size() {
-		return workers.length;
+	public long getCallerRuns() {
+		return callerRuns.sum();
+	}
+
+	/**
+	 * @return the number of work requests dropped
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the number of work requests let into a full queue because no
+	 *         spare worker could take the place of a waiting one
+	 */
+	public long getOverflowed() {
+		return overflowed.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d waiting (capacity %d), %d blocked, %d over capacity, %d run by caller, %d dropped",
+				getDepth(), capacity, getBlocked(), getOverflowed(), getCallerRuns(), getDropped());
+	}
+
+	/**
+	 * What to do with work added while the queue is full
+	 */
+	public enum Policy {
+		/**
+		 * Waits until there is room in the queue. A worker of the same queue
+		 * waits as well, while a spare worker takes its place, so the workers
+		 * never all end up waiting for each other. Only if the pool cannot add
+		 * another spare worker is the work let into the queue over its
+		 * capacity.
+		 */
+		BLOCK,
+		/** Runs the work on the thread that added it */
+		CALLER_RUNS,
+		/** Drops the work without running it */
+		DROP;
+
+		/**
+		 * Looks up a policy by name, such as "block" or "caller-runs".
+		 *
+		 * @param name the name of the policy, ignoring case
+		 * @return the policy with that name
+		 * @throws IllegalArgumentException if there is no such policy
+		 */
+		public static Policy forName(String name) {
+			return valueOf(name.trim().toUpperCase().replace('-', '_'));
+		}
 	}
 
 	/**
-	 * Waits until work is available in the work queue. When work is found, will
-	 * remove the work from the queue and run it. If a shutdown is detected, will
-	 * exit instead of grabbing new work from the queue. These threads will
-	 * continue running in the background until a shutdown is requested.
+	 * Runs a work request unless a shutdown was requested before it started,
+	 * and counts it as finished either way.
 	 */
-	private class PoolWorker extends Thread {
-		
+	private class Task implements Runnable {
+		/** The work request to run */
+		private final Runnable r;
+		/** Whether the work request holds room in the queue */
+		private final boolean holdsRoom;
+
+		/**
+		 * Initializes the instance data
+		 *
+		 * @param r the work request to run
+		 * @param holdsRoom whether the work request holds room in the queue
+		 */
+		public Task(Runnable r, boolean holdsRoom) {
+			this.r = r;
+			this.holdsRoom = holdsRoom;
+		}
+
 		@Override
 		public void run() {
-			Runnable r = null;
-
-			while (true) {
-				synchronized (queue) {
-					while (queue.isEmpty() && !shutdown) {
-						try {
-							queue.wait();
-						}
-						catch (InterruptedException ex) {
-							System.err.println("Warning: Work queue interrupted.");
-							Thread.currentThread().interrupt();
-						}
-					}
-					
-					if (shutdown) {
-						break;
-					}
-					else {
-						r = queue.removeFirst();
-					}
-				}
-				
-				try {
+			depth.decrementAndGet();
+			if (holdsRoom) {
+				room.release();
+			}
+			running.set(WorkQueue.this);
+			try {
+				if (!shutdown) {
 					r.run();
 				}
-				catch (RuntimeException e) {
-					log.error("Warning: Work queue encountered an exception while running.", e);
-				}
+			}
+			catch (RuntimeException e) {
+				log.error("Warning: Work queue encountered an exception while running.", e);
+			}
+			finally {
+				running.remove();
 				decrementPending();
 			}
 		}
 	}
-}
\ No newline at end of file
+}
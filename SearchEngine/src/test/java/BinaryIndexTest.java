@@ -0,0 +1,177 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests writing an index to a binary file and loading it back.
+ *
+ * @author tiffanyz
+ */
+public class BinaryIndexTest {
+	/** the directory the files of each test are written to */
+	@TempDir
+	public Path directory;
+
+	/**
+	 * @return a small index with frozen and unfrozen position lists
+	 */
+	private static InvertedIndex sample() {
+		InvertedIndex index = new InvertedIndex();
+		index.add("a.txt", "hello", 1);
+		index.add("a.txt", "world", 2);
+		index.add("a.txt", "hello", 3);
+		index.add("b.txt", "hello", 1);
+		index.add("b.txt", "far", 200);
+		index.add("b.txt", "far", 70000);
+		index.add("c.txt", "world", 5);
+		index.compress();
+		index.add("c.txt", "world", 9);
+		return index;
+	}
+
+	/**
+	 * Writes the index as JSON and returns the bytes written.
+	 *
+	 * @param index the index to write
+	 * @param name the name of the file to write
+	 * @return the JSON of the index and its counts
+	 * @throws IOException if an IO error occurs
+	 */
+	private byte[] json(InvertedIndex index, String name) throws IOException {
+		Path postings = directory.resolve(name + ".json");
+		Path counts = directory.resolve(name + ".counts.json");
+		index.toJsonIndex(postings);
+		index.toJsonCount(counts);
+		byte[] first = Files.readAllBytes(postings);
+		byte[] second = Files.readAllBytes(counts);
+		byte[] both = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, both, first.length, second.length);
+		return both;
+	}
+
+	/**
+	 * Writes the sample index and changes the bytes of the file.
+	 *
+	 * @param change changes the bytes of the file
+	 * @return the path of the changed file
+	 * @throws IOException if an IO error occurs
+	 */
+	private Path corrupt(UnaryOperator<byte[]> change) throws IOException {
+		Path file = directory.resolve("corrupt.bin");
+		sample().toBinary(file);
+		Files.write(file, change.apply(Files.readAllBytes(file)));
+		return file;
+	}
+
+	/**
+	 * Checks that loading the file fails and leaves the index unchanged.
+	 *
+	 * @param file the invalid file
+	 * @param create creates the index to load into
+	 */
+	private static void assertRejected(Path file, Supplier<InvertedIndex> create) {
+		InvertedIndex index = create.get();
+		index.add("existing.txt", "kept", 1);
+		long version = index.getVersion();
+
+		assertThrows(IOException.class, () -> index.fromBinary(file));
+		assertEquals(1, index.getDocuments().size());
+		assertEquals(1, index.numWords());
+		assertEquals(1, index.getTotalCount());
+		assertEquals(version, index.getVersion());
+	}
+
+	/**
+	 * Tests that a loaded index writes exactly the same JSON as the original.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		InvertedIndex original = sample();
+		Path file = directory.resolve("index.bin");
+		original.toBinary(file);
+
+		InvertedIndex plain = new InvertedIndex();
+		plain.fromBinary(file);
+		InvertedIndex striped = new StripedInvertedIndex(4);
+		striped.fromBinary(file);
+
+		byte[] expected = json(original, "original");
+		assertArrayEquals(expected, json(plain, "plain"));
+		assertArrayEquals(expected, json(striped, "striped"));
+		assertEquals(original.getPositions("far", "b.txt"), plain.getPositions("far", "b.txt"));
+		assertEquals(original.getTotalCount(), plain.getTotalCount());
+	}
+
+	/**
+	 * Tests that a file cut short adds nothing to a plain or striped index.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testTruncated() throws IOException {
+		Path file = corrupt(bytes -> Arrays.copyOf(bytes, bytes.length - 3));
+		assertRejected(file, InvertedIndex::new);
+		assertRejected(file, () -> new StripedInvertedIndex(4));
+		assertRejected(file, SafeInvertedIndex::new);
+	}
+
+	/**
+	 * Tests that positions that do not decode to the stored number of positions
+	 * add nothing, even though the lengths in the file are all valid.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testCorruptPositions() throws IOException {
+		Path file = corrupt(bytes -> {
+			// clears the stop bit of the last position in the file
+			bytes[bytes.length - 1] &= 0x7F;
+			return bytes;
+		});
+		assertRejected(file, InvertedIndex::new);
+		assertRejected(file, () -> new StripedInvertedIndex(4));
+	}
+
+	/**
+	 * Tests that extra bytes after the last term are rejected.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testTrailingBytes() throws IOException {
+		Path file = corrupt(bytes -> Arrays.copyOf(bytes, bytes.length + 1));
+		assertRejected(file, InvertedIndex::new);
+	}
+
+	/**
+	 * Tests checking encoded positions against the number of positions.
+	 */
+	@Test
+	public void testIsValid() {
+		PositionList positions = new PositionList();
+		positions.add(3);
+		positions.add(300);
+		ByteBuffer encoded = positions.encode();
+
+		assertTrue(PositionList.isValid(encoded, 2));
+		assertFalse(PositionList.isValid(encoded, 1));
+		assertFalse(PositionList.isValid(encoded, 3));
+		assertFalse(PositionList.isValid(ByteBuffer.wrap(new byte[] { (byte) 0x81, (byte) 0x80 }), 2));
+		assertFalse(PositionList.isValid(ByteBuffer.wrap(new byte[] { 0, 0, 0, 0, 0, (byte) 0x81 }), 1));
+	}
+}
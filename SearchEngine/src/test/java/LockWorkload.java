@@ -0,0 +1,68 @@
+import benchmarks.LockBenchmark;
+
+/**
+ * Guards an index with either the fair {@link ReadWriteLock} or the
+ * {@link MonitorReadWriteLock} it replaced for {@link LockBenchmark}.
+ *
+ * @author tiffanyz
+ */
+public class LockWorkload implements LockBenchmark.Workload {
+	/** The number of documents the words are added to */
+	private static final int DOCUMENTS = 100;
+
+	/** The index guarded by the lock */
+	private InvertedIndex index;
+	/** The words in the index, by number */
+	private String[] words;
+	/** The read lock of the lock compared */
+	private SimpleLock readLock;
+	/** The write lock of the lock compared */
+	private SimpleLock writeLock;
+
+	@Override
+	public void setup(String lock, int count) {
+		switch (lock) {
+			case "fair":
+				ReadWriteLock fair = new ReadWriteLock();
+				readLock = fair.readLock();
+				writeLock = fair.writeLock();
+				break;
+			case "monitor":
+				MonitorReadWriteLock monitor = new MonitorReadWriteLock();
+				readLock = monitor.readLock();
+				writeLock = monitor.writeLock();
+				break;
+			default:
+				throw new IllegalArgumentException("Invalid lock: " + lock);
+		}
+
+		index = new InvertedIndex();
+		words = new String[count];
+		for (int i = 0; i < count; i++) {
+			words[i] = "word" + i;
+			index.add("document" + (i % DOCUMENTS), words[i], i);
+		}
+	}
+
+	@Override
+	public boolean read(int word) {
+		readLock.lock();
+		try {
+			return index.hasWord(words[word]);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void write(int word, int position) {
+		writeLock.lock();
+		try {
+			index.add("document" + (word % DOCUMENTS), words[word], position);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+}
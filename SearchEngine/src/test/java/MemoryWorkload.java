@@ -0,0 +1,34 @@
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import benchmarks.MemoryBenchmark;
+
+/**
+ * Builds indexes for {@link MemoryBenchmark}, either with {@link InvertedIndex}
+ * or with the nested tree maps and sets it used to store positions in.
+ *
+ * @author tiffanyz
+ */
+public class MemoryWorkload implements MemoryBenchmark.Workload {
+	@Override
+	public Object build(String layout, String[] words, int length) {
+		switch (layout) {
+			case "treeset":
+				TreeMap<String, TreeMap<String, TreeSet<Integer>>> trees = new TreeMap<>();
+				for (int i = 0; i < words.length; i++) {
+					trees.computeIfAbsent(words[i], word -> new TreeMap<>())
+							.computeIfAbsent("document" + i / length, location -> new TreeSet<>())
+							.add(i % length + 1);
+				}
+				return trees;
+			case "positions":
+				InvertedIndex index = new InvertedIndex();
+				for (int i = 0; i < words.length; i++) {
+					index.add("document" + i / length, words[i], i % length);
+				}
+				return index;
+			default:
+				throw new IllegalArgumentException("Invalid layout: " + layout);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests freezing position lists into their compressed form and thawing them
+ * back into arrays.
+ *
+ * @author tiffanyz
+ */
+public class PositionListTest {
+	/** positions with gaps that need one to five bytes each */
+	private static final int[] POSITIONS = { 1, 2, 130, 20000, 3000000, Integer.MAX_VALUE };
+
+	/**
+	 * @param positions the positions to add
+	 * @return a new unfrozen list with the positions
+	 */
+	private static PositionList list(int... positions) {
+		PositionList list = new PositionList();
+		for (int position : positions) {
+			list.add(position);
+		}
+		return list;
+	}
+
+	/**
+	 * Checks every way of reading the positions of a list.
+	 *
+	 * @param expected the positions the list should have, in increasing order
+	 * @param list the list to check
+	 */
+	private static void assertPositions(int[] expected, PositionList list) {
+		assertEquals(expected.length, list.size());
+		assertArrayEquals(expected, list.toArray());
+
+		Set<Integer> set = new TreeSet<>();
+		for (int position : expected) {
+			set.add(position);
+			assertTrue(list.contains(position));
+			assertEquals(contains(expected, position + 1), list.contains(position + 1));
+		}
+		assertEquals(set, list.asSet());
+		assertEquals(set.toString(), list.toString());
+		assertFalse(list.contains(0));
+	}
+
+	/**
+	 * @param array the array to search
+	 * @param value the value to find
+	 * @return true if the array holds the value
+	 */
+	private static boolean contains(int[] array, int value) {
+		for (int element : array) {
+			if (element == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tests that a frozen list reads the same as the unfrozen one.
+	 */
+	@Test
+	public void testFreeze() {
+		PositionList list = list(POSITIONS);
+		assertFalse(list.isFrozen());
+		assertPositions(POSITIONS, list);
+
+		int bytes = list.freeze();
+		assertTrue(list.isFrozen());
+		assertEquals(1 + 1 + 2 + 3 + 4 + 5, bytes);
+		assertPositions(POSITIONS, list);
+		assertEquals(bytes, list.freeze());
+	}
+
+	/**
+	 * Tests that an empty list can be frozen.
+	 */
+	@Test
+	public void testFreezeEmpty() {
+		PositionList list = new PositionList();
+		assertEquals(0, list.freeze());
+		assertPositions(new int[0], list);
+		assertTrue(list.add(5));
+		assertPositions(new int[] { 5 }, list);
+	}
+
+	/**
+	 * Tests that adding to a frozen list thaws it, whether the position goes
+	 * at the end, in the middle or is already in the list.
+	 */
+	@Test
+	public void testThaw() {
+		PositionList list = list(10, 20, 30);
+		list.freeze();
+		assertFalse(list.add(20));
+		assertFalse(list.isFrozen());
+		assertPositions(new int[] { 10, 20, 30 }, list);
+
+		list.freeze();
+		assertTrue(list.add(40));
+		assertPositions(new int[] { 10, 20, 30, 40 }, list);
+
+		list.freeze();
+		assertTrue(list.add(15));
+		assertFalse(list.isFrozen());
+		assertPositions(new int[] { 10, 15, 20, 30, 40 }, list);
+	}
+
+	/**
+	 * Tests merging frozen and unfrozen lists in every combination.
+	 */
+	@Test
+	public void testAddAll() {
+		int[] expected = { 1, 2, 3, 5, 8, 13, 21 };
+		for (boolean freezeThis : List.of(false, true)) {
+			for (boolean freezeOther : List.of(false, true)) {
+				PositionList list = list(1, 3, 8, 21);
+				PositionList other = list(2, 3, 5, 13);
+				if (freezeThis) {
+					list.freeze();
+				}
+				if (freezeOther) {
+					other.freeze();
+				}
+				list.addAll(other);
+				assertPositions(expected, list);
+				assertPositions(new int[] { 2, 3, 5, 13 }, other);
+				assertEquals(freezeOther, other.isFrozen());
+			}
+		}
+	}
+
+	/**
+	 * Tests that encoding does not change how the list is stored, and that a
+	 * list created from the encoded bytes reads the same.
+	 */
+	@Test
+	public void testEncode() {
+		PositionList list = list(POSITIONS);
+		PositionList copy = new PositionList(list.encode(), list.size());
+		assertFalse(list.isFrozen());
+		assertTrue(copy.isFrozen());
+		assertPositions(POSITIONS, copy);
+		assertEquals(list.encode(), copy.encode());
+		assertTrue(PositionList.isValid(copy.encode(), POSITIONS.length));
+	}
+
+	/**
+	 * Tests moving the positions of frozen and unfrozen lists.
+	 */
+	@Test
+	public void testShift() {
+		for (boolean freeze : List.of(false, true)) {
+			PositionList list = list(1, 5, 9);
+			if (freeze) {
+				list.freeze();
+			}
+			list.shift(100);
+			assertFalse(list.isFrozen());
+			assertPositions(new int[] { 101, 105, 109 }, list);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests postings and indexes whose position lists are frozen into the
+ * compressed form, compared with the same postings left uncompressed.
+ *
+ * @author tiffanyz
+ */
+public class PostingsTest {
+	/** the directory the files of each test are written to */
+	@TempDir
+	public Path directory;
+
+	/**
+	 * @param compress whether to freeze the position lists
+	 * @return postings with three documents added out of order
+	 */
+	private static Postings postings(boolean compress) {
+		Postings postings = new Postings();
+		postings.add(7).add(3);
+		postings.add(2).add(1);
+		postings.add(7).add(9);
+		postings.add(4).add(500);
+		if (compress) {
+			for (int i = 0; i < postings.size(); i++) {
+				postings.positions(i).freeze();
+			}
+		}
+		return postings;
+	}
+
+	/**
+	 * @param compress whether to compress the index
+	 * @return a small index with words in several locations
+	 */
+	private static InvertedIndex index(boolean compress) {
+		InvertedIndex index = new InvertedIndex();
+		index.add("one.txt", "apple", 0);
+		index.add("one.txt", "banana", 1);
+		index.add("one.txt", "apple", 2);
+		index.add("two.txt", "apple", 0);
+		index.add("two.txt", "cherry", 300);
+		index.add("two.txt", "cherry", 100000);
+		index.add("three.txt", "banana", 4);
+		if (compress) {
+			index.compress();
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the index and its counts as JSON.
+	 *
+	 * @param index the index to write
+	 * @param name the name of the files to write
+	 * @return the bytes of the index followed by the bytes of the counts
+	 * @throws IOException if an IO error occurs
+	 */
+	private byte[] json(InvertedIndex index, String name) throws IOException {
+		Path postings = directory.resolve(name + ".json");
+		Path counts = directory.resolve(name + ".counts.json");
+		index.toJsonIndex(postings);
+		index.toJsonCount(counts);
+		byte[] first = Files.readAllBytes(postings);
+		byte[] second = Files.readAllBytes(counts);
+		byte[] both = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, both, first.length, second.length);
+		return both;
+	}
+
+	/**
+	 * Tests that frozen postings hold the same documents and positions.
+	 */
+	@Test
+	public void testFrozenPostings() {
+		for (boolean compress : new boolean[] { false, true }) {
+			Postings postings = postings(compress);
+			assertEquals(3, postings.size());
+			assertEquals(2, postings.document(0));
+			assertEquals(4, postings.document(1));
+			assertEquals(7, postings.document(2));
+			assertArrayEquals(new int[] { 3, 9 }, postings.get(7).toArray());
+			assertEquals(compress, postings.get(7).isFrozen());
+			assertNull(postings.get(5));
+			assertEquals(-3, postings.find(5));
+			assertEquals(2, postings.advance(0, 5));
+			assertEquals(3, postings.advance(0, 8));
+		}
+	}
+
+	/**
+	 * Tests that adding to a frozen document thaws only its own list.
+	 */
+	@Test
+	public void testThawPostings() {
+		Postings postings = postings(true);
+		PositionList list = postings.add(7);
+		assertSame(postings.get(7), list);
+		assertTrue(list.add(5));
+		assertFalse(list.isFrozen());
+		assertArrayEquals(new int[] { 3, 5, 9 }, postings.get(7).toArray());
+		assertTrue(postings.get(2).isFrozen());
+		assertTrue(postings.get(4).isFrozen());
+	}
+
+	/**
+	 * Tests merging frozen postings into postings of either layout, which must
+	 * never change the frozen lists being merged in.
+	 */
+	@Test
+	public void testAddAllPostings() {
+		for (boolean compress : new boolean[] { false, true }) {
+			Postings postings = postings(compress);
+			Postings other = postings(true);
+			other.add(7).add(1);
+			other.add(10).add(6);
+			other.positions(other.size() - 1).freeze();
+
+			postings.addAll(other, null);
+			assertEquals(4, postings.size());
+			assertArrayEquals(new int[] { 1, 3, 9 }, postings.get(7).toArray());
+			assertArrayEquals(new int[] { 6 }, postings.get(10).toArray());
+			assertArrayEquals(new int[] { 1, 3, 9 }, other.get(7).toArray());
+			assertTrue(other.get(10).isFrozen());
+		}
+	}
+
+	/**
+	 * Tests that a compressed index answers lookups like an uncompressed one.
+	 */
+	@Test
+	public void testCompressedIndex() {
+		InvertedIndex plain = index(false);
+		InvertedIndex compressed = index(true);
+		for (String word : Set.of("apple", "banana", "cherry")) {
+			assertEquals(plain.getLocations(word), compressed.getLocations(word));
+			for (String location : plain.getLocations(word)) {
+				Set<Integer> positions = plain.getPositions(word, location);
+				assertEquals(positions, compressed.getPositions(word, location));
+				for (int position : positions) {
+					assertTrue(compressed.hasPosition(word, location, position));
+					assertFalse(compressed.hasPosition(word, location, position + 1));
+				}
+			}
+		}
+		assertTrue(compressed.hasPosition("cherry", "two.txt", 100001));
+		assertFalse(compressed.hasPosition("cherry", "one.txt", 100001));
+	}
+
+	/**
+	 * Tests that adding to a compressed index thaws what it changes and keeps
+	 * answering like an uncompressed index given the same words.
+	 */
+	@Test
+	public void testAddToCompressedIndex() {
+		InvertedIndex plain = index(false);
+		InvertedIndex compressed = index(true);
+		for (InvertedIndex index : new InvertedIndex[] { plain, compressed }) {
+			index.add("two.txt", "cherry", 5000);
+			index.add("one.txt", "apple", 1);
+			index.add("four.txt", "apple", 0);
+		}
+		assertEquals(plain.getPositions("cherry", "two.txt"), compressed.getPositions("cherry", "two.txt"));
+		assertEquals(Set.of(1, 2, 3), compressed.getPositions("apple", "one.txt"));
+		assertTrue(compressed.hasPosition("cherry", "two.txt", 5001));
+		assertEquals(plain.getCount("two.txt"), compressed.getCount("two.txt"));
+		assertEquals(plain.getTotalCount(), compressed.getTotalCount());
+	}
+
+	/**
+	 * Tests that compressing an index does not change a single byte of its
+	 * JSON, before or after more words are added.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Test
+	public void testJson() throws IOException {
+		InvertedIndex plain = index(false);
+		InvertedIndex compressed = index(true);
+		assertArrayEquals(json(plain, "plain"), json(compressed, "compressed"));
+
+		for (InvertedIndex index : new InvertedIndex[] { plain, compressed }) {
+			index.add("two.txt", "cherry", 200);
+			index.add("three.txt", "apple", 9);
+		}
+		assertArrayEquals(json(plain, "plain"), json(compressed, "compressed"));
+
+		compressed.compress();
+		assertArrayEquals(json(plain, "plain"), json(compressed, "compressed"));
+	}
+}
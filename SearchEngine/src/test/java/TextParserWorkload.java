@@ -0,0 +1,25 @@
+import java.util.function.Consumer;
+
+import benchmarks.TextParserBenchmark;
+
+/**
+ * Parses lines for {@link TextParserBenchmark}.
+ *
+ * @author tiffanyz
+ */
+public class TextParserWorkload implements TextParserBenchmark.Workload {
+	@Override
+	public String[] regex(String line) {
+		return TextParser.split(TextParser.clean(line));
+	}
+
+	@Override
+	public String[] array(String line) {
+		return TextParser.parse(line);
+	}
+
+	@Override
+	public void callback(String line, StringBuilder buffer, Consumer<? super CharSequence> action) {
+		TextParser.parse(line, buffer, action);
+	}
+}
@@ -0,0 +1,183 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the fair reentrant {@code ReadWriteLock} with the monitor-based
+ * lock it replaced, guarding lookups in an index. Readers look up words under
+ * the read lock, either on their own or while a crawler adds words under the
+ * write lock, doing some work of its own between additions. The main method
+ * runs both at 1 to 64 readers; run it with:
+ *
+ * <pre>
+ * mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath benchmarks.LockBenchmark"
+ * </pre>
+ *
+ * Any JMH options given after the class name, such as {@code -wi 1 -i 3}, are
+ * used for every run.
+ *
+ * @author tiffanyz
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LockBenchmark {
+	/** The numbers of readers the main method runs with */
+	private static final int[] READERS = { 1, 2, 4, 8, 16, 32, 64 };
+	/** The work the crawler does between additions, in JMH tokens */
+	private static final long CRAWL_WORK = 1000;
+
+	/**
+	 * An index guarded by a read/write lock, implemented by
+	 * {@code LockWorkload}
+	 */
+	public interface Workload {
+		/**
+		 * Creates the lock and fills the index.
+		 *
+		 * @param lock the lock to use, either "fair" or "monitor"
+		 * @param words the number of words in the index
+		 */
+		void setup(String lock, int words);
+
+		/**
+		 * Looks up a word under the read lock.
+		 *
+		 * @param word the number of the word to look up
+		 * @return true if the index has the word
+		 */
+		boolean read(int word);
+
+		/**
+		 * Adds a word under the write lock.
+		 *
+		 * @param word the number of the word to add
+		 * @param position the position to add it at
+		 */
+		void write(int word, int position);
+	}
+
+	/** The lock compared */
+	@Param({ "fair", "monitor" })
+	public String lock;
+
+	/** The number of words in the index */
+	@Param({ "10000" })
+	public int words;
+
+	/** The index and lock shared by the threads of a group */
+	private Workload workload;
+
+	/**
+	 * Creates the lock and fills the index for every trial.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		workload = Workloads.load("LockWorkload", Workload.class);
+		workload.setup(lock, words);
+	}
+
+	/**
+	 * The word each thread looks up or adds next
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		/** The number of the next word */
+		private int next;
+
+		/**
+		 * @param bound the number of words
+		 * @return the number of the next word
+		 */
+		public int next(int bound) {
+			next = (next + 7919) % bound;
+			return next;
+		}
+	}
+
+	/**
+	 * Looks up words with no writer.
+	 *
+	 * @param cursor the word to look up next
+	 * @return whether the word was found
+	 */
+	@Benchmark
+	@Group("reading")
+	public boolean reads(Cursor cursor) {
+		return workload.read(cursor.next(words));
+	}
+
+	/**
+	 * Looks up words while the crawler adds words.
+	 *
+	 * @param cursor the word to look up next
+	 * @return whether the word was found
+	 */
+	@Benchmark
+	@Group("crawling")
+	public boolean crawlingRead(Cursor cursor) {
+		return workload.read(cursor.next(words));
+	}
+
+	/**
+	 * Adds a word as a crawler does, which then works on the next page.
+	 *
+	 * @param cursor the word to add next
+	 */
+	@Benchmark
+	@Group("crawling")
+	public void crawlingWrite(Cursor cursor) {
+		int word = cursor.next(words);
+		workload.write(word, word % 100);
+		Blackhole.consumeCPU(CRAWL_WORK);
+	}
+
+	/**
+	 * Runs the readers on their own and with a crawler, at every number of
+	 * readers. Iterations with a crawler are not synchronized, as the readers
+	 * would otherwise keep running until a crawler starved by them finishes,
+	 * which it never does.
+	 *
+	 * @param args JMH options used for every run
+	 * @throws RunnerException if a benchmark fails
+	 * @throws CommandLineOptionException if the options are not valid
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		for (int readers : READERS) {
+			new Runner(new OptionsBuilder().parent(options)
+					.include(LockBenchmark.class.getName() + ".reading")
+					.threadGroups(readers)
+					.build()).run();
+			new Runner(new OptionsBuilder().parent(options)
+					.include(LockBenchmark.class.getName() + ".crawling")
+					.threadGroups(readers, 1)
+					.syncIterations(false)
+					.build()).run();
+		}
+	}
+}
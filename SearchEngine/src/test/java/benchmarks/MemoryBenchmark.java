@@ -0,0 +1,165 @@
+package benchmarks;
+
+import java.lang.ref.Reference;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the memory and build time of the index's {@code PositionList}
+ * postings against the nested
+ * {@code TreeMap<String, TreeMap<String, TreeSet<Integer>>>} layout they
+ * replaced. Every operation indexes the same generated stream of words, where
+ * a few words are common and most are rare, split into documents of equal
+ * length. The build benchmark reports the time to index the stream, and the
+ * footprint benchmark reports the heap the finished index keeps after a full
+ * collection, in total and per position. Run it with the default iterations,
+ * as options such as {@code -i} also change the footprint benchmark's:
+ *
+ * <pre>
+ * mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main benchmarks.MemoryBenchmark"
+ * </pre>
+ *
+ * @author tiffanyz
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class MemoryBenchmark {
+	/**
+	 * The ways of storing the positions of words, implemented by
+	 * {@code MemoryWorkload}
+	 */
+	public interface Workload {
+		/**
+		 * Indexes the words, each at its position in its document.
+		 *
+		 * @param layout the way to store positions, either "treeset" or
+		 *        "positions"
+		 * @param words the words to index, in order
+		 * @param length the number of words in each document
+		 * @return the index built
+		 */
+		Object build(String layout, String[] words, int length);
+	}
+
+	/** The way positions are stored */
+	@Param({ "treeset", "positions" })
+	public String layout;
+
+	/** The number of words, and so positions, indexed */
+	@Param({ "1000000" })
+	public int positions;
+
+	/** The number of different words */
+	@Param({ "20000" })
+	public int vocabulary;
+
+	/** The number of words in each document */
+	@Param({ "5000" })
+	public int length;
+
+	/** The words to index */
+	private String[] words;
+	/** The layout measured */
+	private Workload workload;
+
+	/**
+	 * Generates the same words for every run, each chosen with a probability
+	 * that falls quickly with its rank.
+	 */
+	@Setup
+	public void setup() {
+		Random random = new Random(212);
+		String[] ranked = new String[vocabulary];
+		for (int i = 0; i < vocabulary; i++) {
+			ranked[i] = "word" + i;
+		}
+		words = new String[positions];
+		for (int i = 0; i < positions; i++) {
+			double skew = random.nextDouble();
+			words[i] = ranked[(int) (vocabulary * skew * skew * skew)];
+		}
+		workload = Workloads.load("MemoryWorkload", Workload.class);
+	}
+
+	/**
+	 * The heap kept by the last index built
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Footprint {
+		/** The bytes kept by the index */
+		public long bytes;
+		/** The bytes kept by the index for each position */
+		public double bytesPerPosition;
+	}
+
+	/**
+	 * Indexes the words.
+	 *
+	 * @return the index built
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	public Object build() {
+		return workload.build(layout, words, length);
+	}
+
+	/**
+	 * Indexes the words once and measures the heap the index keeps. The serial
+	 * collector is told to compact the whole heap on every collection, as it
+	 * otherwise leaves some garbage in place that still counts as in use. JMH
+	 * adds up the counters of every iteration, so only one is measured. The
+	 * time reported includes the collections and is not meaningful on its own.
+	 *
+	 * @param footprint where to record the heap kept
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 1)
+	@Measurement(iterations = 1)
+	@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g", "-XX:+UseSerialGC", "-XX:MarkSweepDeadRatio=0" })
+	public void footprint(Footprint footprint) {
+		long before = used();
+		Object index = workload.build(layout, words, length);
+		long after = used();
+		Reference.reachabilityFence(index);
+		footprint.bytes = after - before;
+		footprint.bytesPerPosition = (double) footprint.bytes / positions;
+	}
+
+	/**
+	 * Collects garbage until the heap in use stops shrinking.
+	 *
+	 * @return the bytes of heap in use
+	 */
+	private static long used() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		while (true) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used) {
+				return now;
+			}
+			used = now;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the throughput of parsing text with the regular expressions that
+ * {@code TextParser} used to run on every line against the single table-driven
+ * pass, both returning arrays and passing words to a callback. Every operation
+ * parses the same generated lines, which mix upper and lower case, digits,
+ * punctuation and accented letters. Run it with:
+ *
+ * <pre>
+ * mvn -B test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main benchmarks.TextParserBenchmark"
+ * </pre>
+ *
+ * @author tiffanyz
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextParserBenchmark {
+	/**
+	 * The ways of parsing a line, implemented by {@code TextParserWorkload}
+	 */
+	public interface Workload {
+		/**
+		 * @param line the line to parse
+		 * @return the words, found with regular expressions
+		 */
+		String[] regex(String line);
+
+		/**
+		 * @param line the line to parse
+		 * @return the words, found in a single pass
+		 */
+		String[] array(String line);
+
+		/**
+		 * @param line the line to parse
+		 * @param buffer the buffer to build each word in
+		 * @param action the action to run on each word
+		 */
+		void callback(String line, StringBuilder buffer, Consumer<? super CharSequence> action);
+	}
+
+	/** The words the lines are made of */
+	private static final String[] WORDS = { "the", "Quick", "brown", "FOX", "jumps", "over", "lazy", "dogs",
+			"café", "naïve", "Über", "résumé", "señor", "2020", "it's", "e-mail", "(search)", "engine,", "index.", "Ærøskøbing" };
+
+	/** The number of lines parsed by every operation */
+	@Param({ "1000" })
+	public int lines;
+
+	/** The lines to parse */
+	private String[] text;
+	/** The parsing measured */
+	private Workload workload;
+
+	/**
+	 * Generates the same lines for every run.
+	 */
+	@Setup
+	public void setup() {
+		workload = Workloads.load("TextParserWorkload", Workload.class);
+		Random random = new Random(212);
+		text = new String[lines];
+		for (int i = 0; i < lines; i++) {
+			StringBuilder line = new StringBuilder();
+			int length = 5 + random.nextInt(15);
+			for (int j = 0; j < length; j++) {
+				line.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(8) == 0 ? "\t" : " ");
+			}
+			text[i] = line.toString();
+		}
+	}
+
+	/**
+	 * Normalizes, cleans, lowercases and splits every line with regular
+	 * expressions, as every line used to be parsed.
+	 *
+	 * @param blackhole consumes the words
+	 */
+	@Benchmark
+	public void regex(Blackhole blackhole) {
+		for (String line : text) {
+			blackhole.consume(workload.regex(line));
+		}
+	}
+
+	/**
+	 * Parses every line into an array in a single pass.
+	 *
+	 * @param blackhole consumes the words
+	 */
+	@Benchmark
+	public void array(Blackhole blackhole) {
+		for (String line : text) {
+			blackhole.consume(workload.array(line));
+		}
+	}
+
+	/**
+	 * Parses every line in a single pass, passing each word to a callback
+	 * through a reused buffer, as the index builders do.
+	 *
+	 * @param blackhole consumes the words
+	 */
+	@Benchmark
+	public void callback(Blackhole blackhole) {
+		StringBuilder buffer = new StringBuilder();
+		for (String line : text) {
+			workload.callback(line, buffer, blackhole::consume);
+		}
+	}
+}
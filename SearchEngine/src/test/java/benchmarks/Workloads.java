@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Loads the code a benchmark measures. The search engine's classes are in the
+ * default package, which the benchmarks in this package cannot refer to, and
+ * JMH does not allow benchmarks in the default package. Each benchmark instead
+ * declares the work it measures as an interface, which a class in the default
+ * package implements by calling the search engine. The class is loaded once
+ * per run, so the measured calls are plain interface calls.
+ *
+ * @author tiffanyz
+ */
+public class Workloads {
+	/**
+	 * Creates an instance of the named class from the default package.
+	 *
+	 * @param <T> the type of the workload
+	 * @param name the name of the class, which needs a public constructor that
+	 *        takes no arguments
+	 * @param type the interface the class implements
+	 * @return a new instance of the class
+	 */
+	public static <T> T load(String name, Class<T> type) {
+		try {
+			return type.cast(Class.forName(name).getDeclaredConstructor().newInstance());
+		}
+		catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Unable to load the workload " + name, e);
+		}
+	}
+
+	/** Prevents instantiating this class */
+	private Workloads() {
+	}
+}